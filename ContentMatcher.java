@@ -0,0 +1,159 @@
+package cli;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+  // what -contains and -regex-content look for inside a file.  the file is searched where it
+  // lies: small files are read into a buffer that each thread keeps, larger ones are mapped
+  // REGION bytes at a time.  the search stops at the first match.
+  //
+  // a literal is searched for as UTF-8 bytes with Boyer-Moore-Horspool, which skips ahead by up
+  // to the length of the literal at each step.  consecutive regions overlap by the literal's
+  // length less one, so a match isn't missed where they meet.  a regex runs over the bytes as
+  // ISO-8859-1 characters, one per byte, without decoding; non-ASCII characters in the regex
+  // are turned into their UTF-8 bytes the same way, so they match, but a class of non-ASCII
+  // characters doesn't.  regions are cut after a newline, so like grep a match can't span
+  // lines at the edge of a region.  a region with no newline in it is overlapped by half by the
+  // next one, so only a match longer than REGION / 2 inside such a long line can be missed.
+  //
+  // like grep -I, a file with a NUL byte in its first SNIFF bytes is binary and never matches.
+public abstract class ContentMatcher {
+
+    static final int SNIFF = 8192;
+    static final int SMALL = 1 << 16;           // read, not mapped
+    static final long REGION = 64L << 20;
+
+    public static ContentMatcher literal(String text) {
+        return new Literal(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static ContentMatcher regex(String regex) throws IllegalArgumentException {
+        String latin1 = new String(regex.getBytes(StandardCharsets.UTF_8), StandardCharsets.ISO_8859_1);
+        try { return new Regex(Pattern.compile(latin1, Pattern.MULTILINE)); }
+        catch (PatternSyntaxException e) { throw new IllegalArgumentException("invalid regex '" + regex + "': " + e.getDescription()); }
+    }
+
+      // true if the file at path, of the given size, is text and matches
+    public boolean matches(Path path, long size) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (size <= SMALL) {
+                ByteBuffer buf = BUFFER.get();
+                buf.clear();
+                while (buf.hasRemaining() && ch.read(buf) > 0) { }
+                buf.flip();
+                return !binary(buf) && find(buf);
+            }
+            for (long at = 0; at < size; ) {
+                ByteBuffer region = ch.map(FileChannel.MapMode.READ_ONLY, at, Math.min(REGION, size - at));
+                if (at == 0 && binary(region)) return false;
+                if (at + region.limit() >= size) return find(region);
+                int end = cut(region);
+                boolean uncut = end < 0;
+                if (uncut) end = region.limit();
+                region.limit(end);
+                if (find(region)) return true;
+                at += Math.max(1, end - overlap(uncut));
+            }
+            return false;
+        }
+    }
+
+      // whether buf, from 0 to its limit, contains a match
+    abstract boolean find(ByteBuffer buf);
+
+      // how far a region reaches into the one after it.  uncut: cut() found no place to end it
+    abstract int overlap(boolean uncut);
+
+      // where a full region ends: regexes end it after its last newline, or -1 if there is none
+    int cut(ByteBuffer region) {
+        return region.limit();
+    }
+
+    private static final ThreadLocal<ByteBuffer> BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocate(SMALL + 1));
+
+    private static boolean binary(ByteBuffer buf) {
+        int end = Math.min(buf.limit(), SNIFF);
+        for (int n = 0; n < end; n++) if (buf.get(n) == 0) return true;
+        return false;
+    }
+
+    private static final class Literal extends ContentMatcher {
+        final byte[] pattern;
+        final int[] skip = new int[256];
+
+        Literal(byte[] pattern) {
+            this.pattern = pattern;
+            int m = pattern.length;
+            for (int n = 0; n < 256; n++) skip[n] = Math.max(m, 1);
+            for (int n = 0; n < m - 1; n++) skip[pattern[n] & 0xff] = m - 1 - n;
+        }
+
+        boolean find(ByteBuffer buf) {
+            int m = pattern.length;
+            int end = buf.limit();
+            if (m == 0) return true;
+            byte last = pattern[m - 1];
+            for (int at = 0; at + m <= end; ) {
+                byte b = buf.get(at + m - 1);
+                if (b == last) {
+                    int n = m - 2;
+                    while (n >= 0 && buf.get(at + n) == pattern[n]) n--;
+                    if (n < 0) return true;
+                }
+                at += skip[b & 0xff];
+            }
+            return false;
+        }
+
+        int overlap(boolean uncut) { return pattern.length - 1; }
+    }
+
+    private static final class Regex extends ContentMatcher {
+        final Pattern pattern;
+
+        Regex(Pattern pattern) {
+            this.pattern = pattern;
+        }
+
+        boolean find(ByteBuffer buf) {
+            return pattern.matcher(new Bytes(buf, 0, buf.limit())).find();
+        }
+
+        int overlap(boolean uncut) { return uncut ? (int) (REGION / 2) : 0; }
+
+          // after the last newline
+        int cut(ByteBuffer region) {
+            for (int n = region.limit(); n > 0; n--) if (region.get(n - 1) == '\n') return n;
+            return -1;
+        }
+    }
+
+      // bytes as ISO-8859-1 characters, for java.util.regex
+    private static final class Bytes implements CharSequence {
+        final ByteBuffer buf;
+        final int from;
+        final int to;
+
+        Bytes(ByteBuffer buf, int from, int to) {
+            this.buf = buf;
+            this.from = from;
+            this.to = to;
+        }
+
+        public int length()                  { return to - from; }
+        public char charAt(int index)        { return (char) (buf.get(from + index) & 0xff); }
+        public CharSequence subSequence(int start, int end) { return new Bytes(buf, from + start, from + end); }
+
+        public String toString() {
+            byte[] b = new byte[to - from];
+            for (int n = 0; n < b.length; n++) b[n] = buf.get(from + n);
+            return new String(b, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
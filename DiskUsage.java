@@ -0,0 +1,384 @@
+package cli;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.FileStore;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+  // du: the total size of every directory, summed bottom-up over a parallel walk.  links are
+  // not followed.  sizes are either the apparent size in bytes, or the space allocated, which
+  // is approximated by rounding each size up to the block size of its file store, since Java
+  // can't read st_blocks.  a file with several hard links is only counted the first time it is
+  // seen, unless COUNTLINKS; in a parallel walk which directory gets it depends on timing, the
+  // grand total doesn't.
+  //
+  // with a cache file, each directory's own entries are remembered along with its mtime, inode
+  // and device.  on the next run a directory whose mtime hasn't changed, and that is still the
+  // same directory and not another one renamed into its place, isn't read again: the remembered
+  // totals and subdirectories are used, and only the subdirectories are stat'ed, to see if they
+  // changed.
+  // like FindIndex, a file that changes size in place without its directory changing is only
+  // noticed once something in the directory is added, removed or renamed.
+public class DiskUsage {
+
+    public static final int BYTES      = 1;   // apparent sizes instead of allocated space
+    public static final int COUNTLINKS = 2;   // count hard linked files once per link
+
+      // the tree under path, with totals for every directory down to maxDepth (-1 for all).
+      // cache may be null; it is only read here, see save().
+    public static DiskUsage of(String path, int options, int maxDepth, int parallelism, Cache cache) throws IOException {
+        DiskUsage du = new DiskUsage(options, maxDepth, cache);
+        FileEntry root = FileEntry.lstat(Paths.get(path));
+        if (!root.isDirectory()) {
+            du.root = new Node(root.path().toString(), du.size(root));
+            return du;
+        }
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+        try { du.root = pool.invoke(new Walker(du, root, 0)); }
+        finally { pool.shutdown(); }
+        return du;
+    }
+
+    public long total() {
+        return root.total;
+    }
+
+      // totals in du's order: every directory after the ones below it, siblings by name
+    public void write(OutputBuffer out) throws IOException {
+        write(root, out);
+    }
+
+      // remember what this run saw, for the next one
+    public void save(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(Cache.MAGIC);
+            out.writeInt(Cache.VERSION);
+            out.writeInt(options & Cache.OPTIONS);
+            out.writeInt(seen.size());
+            for (Map.Entry<String, Cache.Dir> e : seen.entrySet()) {
+                Cache.Dir d = e.getValue();
+                out.writeUTF(e.getKey());
+                out.writeLong(d.mtime);
+                out.writeLong(d.inode);
+                out.writeLong(d.device);
+                out.writeLong(d.own);
+                out.writeInt(d.subdirs.length);
+                for (String s : d.subdirs) out.writeUTF(s);
+                out.writeInt(d.links.length);
+                for (long l : d.links) out.writeLong(l);
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+      // directory totals from an earlier run, see save()
+    public static final class Cache {
+        static final int MAGIC = 0x44555343;    // "DUSC"
+        static final int VERSION = 3;
+        static final int OPTIONS = BYTES | COUNTLINKS;      // the options the totals depend on
+
+          // an empty cache if the file doesn't exist, or was written with other options
+        public static Cache load(Path file, int options) throws IOException {
+            Cache c = new Cache();
+            if (!Files.exists(file)) return c;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != (options & OPTIONS)) return c;
+                for (int n = in.readInt(); n > 0; n--) {
+                    String path = in.readUTF();
+                    long mtime = in.readLong();
+                    long inode = in.readLong();
+                    long device = in.readLong();
+                    long own = in.readLong();
+                    String[] subdirs = new String[in.readInt()];
+                    for (int i = 0; i < subdirs.length; i++) subdirs[i] = in.readUTF();
+                    long[] links = new long[in.readInt()];
+                    for (int i = 0; i < links.length; i++) links[i] = in.readLong();
+                    c.dirs.put(path, new Dir(mtime, inode, device, own, subdirs, links));
+                }
+            }
+            return c;
+        }
+
+        private final Map<String, Dir> dirs = new ConcurrentHashMap<String, Dir>();
+
+          // one directory's own entries: the total of those that aren't directories or hard
+          // links, its subdirectory names, and (device, inode, size) of each hard linked file.
+          // mtime, inode and device are the directory's own, to tell if it is still the same.
+        static final class Dir {
+            static final long UNREAD = Long.MIN_VALUE;  // the mtime of one that couldn't be read, never cached
+
+            final long mtime;
+            final long inode;
+            final long device;
+            final long own;
+            final String[] subdirs;
+            final long[] links;
+
+            Dir(long mtime, long inode, long device, long own, String[] subdirs, long[] links) {
+                this.mtime = mtime;
+                this.inode = inode;
+                this.device = device;
+                this.own = own;
+                this.subdirs = subdirs;
+                this.links = links;
+            }
+
+              // whether this is what dir held when it was cached
+            boolean matches(FileEntry dir) {
+                return mtime == dir.lastModified() && inode == dir.inode() && device == dir.device();
+            }
+        }
+    }
+
+      // usage: DiskUsage [-b] [-l] [-s] [-d N] [-P N] [-c FILE] [-stats] [PATH]...
+    public static void main(String ... args) {
+        OutputBuffer out = new OutputBuffer(new FileOutputStream(FileDescriptor.out));
+        System.setOut(new PrintStream(out, false));
+        try { du(out, args); }
+        finally { System.out.flush(); }
+        Metrics m = Metrics.current();
+        if (m != null) for (String line : m.summary()) System.err.println("DiskUsage: Stats: " + line);
+    }
+
+    private static void du(OutputBuffer out, String ... args) {
+        String errorMsg = "";
+        List<String> paths = new ArrayList<String>();
+        int options = 0;
+        int maxDepth = -1;
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        String cacheFile = "";
+        String workingDir = System.getProperty("user.dir");
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.isEmpty()) continue;
+            switch (arg) {
+                case "-b": options = options | BYTES; break;
+                case "-l": options = options | COUNTLINKS; break;
+                case "-s": maxDepth = 0; break;
+                case "-stats":
+                case "--stats": Metrics.enable(); break;
+                case "-d":
+                case "-P":
+                case "-c":
+                    if (i + 1 == args.length) {
+                        errorMsg = errorMsg + "DiskUsage: Error: missing argument to " + arg + "\n";
+                        break;
+                    }
+                    String value = args[++i];
+                    if (arg.equals("-c")) { cacheFile = value; break; }
+                    int n;
+                    try { n = Integer.parseInt(value); }
+                    catch (NumberFormatException e) { n = -1; }
+                    if (n < (arg.equals("-d") ? 0 : 1)) errorMsg = errorMsg + "DiskUsage: Error: invalid argument '" + value + "' to " + arg + "\n";
+                    else if (arg.equals("-d")) maxDepth = n;
+                    else parallelism = n;
+                    break;
+                default:
+                    if (arg.charAt(0) == '-')
+                        errorMsg = errorMsg + "DiskUsage: Unknown option: '" + arg + "'\n";
+                    else if (arg.charAt(0) == '/')
+                        paths.add(arg);
+                    else paths.add(workingDir + File.separator + arg);
+            }
+        }
+        if (!errorMsg.equals("")) { System.out.println(errorMsg); return; }
+        if (paths.isEmpty()) paths.add(workingDir);
+
+        Cache cache = null;
+        if (!cacheFile.equals("")) {
+            try { cache = Cache.load(Paths.get(cacheFile), options); }
+            catch (IOException e) { System.out.println("DiskUsage: Error: " + e.toString() + ": " + cacheFile); }
+        }
+          // every path is remembered in the same cache file
+        Cache next = new Cache();
+        for (String path : paths) {
+            try {
+                DiskUsage du = of(path, options, maxDepth, parallelism, cache);
+                du.write(out);
+                next.dirs.putAll(du.seen);
+            } catch (IOException e) {
+                System.out.println("DiskUsage: Error: cannot access " + path + ": " + e.toString());
+            }
+        }
+        if (!cacheFile.equals("")) {
+            DiskUsage merged = new DiskUsage(options, -1, null);
+            merged.seen.putAll(next.dirs);
+            try { merged.save(Paths.get(cacheFile)); }
+            catch (IOException e) { System.out.println("DiskUsage: Error: " + e.toString() + ": " + cacheFile); }
+        }
+    }
+
+    private final int options;
+    private final int maxDepth;
+    private final Cache cache;
+    private final Set<List<Long>> linked = ConcurrentHashMap.newKeySet();      // (device, inode) counted
+    private final Map<String, Cache.Dir> seen = new ConcurrentHashMap<String, Cache.Dir>();
+    private final Map<Long, Long> blockSizes = new ConcurrentHashMap<Long, Long>();
+    private Node root;
+
+    private DiskUsage(int options, int maxDepth, Cache cache) {
+        this.options = options;
+        this.maxDepth = maxDepth;
+        this.cache = cache;
+    }
+
+      // a directory's total, and the directories below it that are reported
+    private static final class Node {
+        final String path;
+        final long total;
+        final List<Node> children;
+
+        Node(String path, long total) {
+            this(path, total, Collections.<Node>emptyList());
+        }
+
+        Node(String path, long total, List<Node> children) {
+            this.path = path;
+            this.total = total;
+            this.children = children;
+        }
+    }
+
+    private static final class Walker extends RecursiveTask<Node> {
+        private static final long serialVersionUID = 1L;
+
+        private final DiskUsage du;
+        private final FileEntry dir;
+        private final int depth;
+
+        Walker(DiskUsage du, FileEntry dir, int depth) {
+            this.du = du;
+            this.dir = dir;
+            this.depth = depth;
+        }
+
+        protected Node compute() {
+            Path path = dir.path();
+            String key = path.toString();
+            List<Walker> subtasks = new ArrayList<Walker>();
+            List<String> subdirs = new ArrayList<String>();
+            Cache.Dir cached = (du.cache == null) ? null : du.cache.dirs.get(key);
+            Cache.Dir own;
+            if (cached != null && cached.matches(dir)) {
+                  // unchanged: only the subdirectories are looked at again
+                for (String name : cached.subdirs) {
+                    try {
+                        FileEntry e = FileEntry.lstat(path.resolve(name));
+                        if (e.isDirectory()) { subtasks.add(new Walker(du, e, depth + 1)); subdirs.add(name); }
+                    } catch (IOException x) { Metrics.error(x); }
+                }
+                own = cached;
+            } else {
+                own = du.read(dir, subtasks, subdirs, depth);
+            }
+            Metrics.increment(Metrics.DIRECTORIES);
+              // one that couldn't be read is left out, so the next run reads it, and reports it, again
+            if (own.mtime != Cache.Dir.UNREAD)
+                du.seen.put(key, new Cache.Dir(dir.lastModified(), dir.inode(), dir.device(), own.own, subdirs.toArray(new String[0]), own.links));
+
+            for (Walker w : subtasks) w.fork();
+            long total = du.size(dir) + own.own + du.linked(own.links);
+            boolean report = du.maxDepth < 0 || depth < du.maxDepth;
+            List<Node> children = report ? new ArrayList<Node>() : Collections.<Node>emptyList();
+            for (Walker w : subtasks) {
+                Node child = w.join();
+                total += child.total;
+                if (report) children.add(child);
+            }
+            if (report) children.sort((a, b) -> a.path.compareTo(b.path));
+            return new Node(key, total, children);
+        }
+    }
+
+      // read a directory that isn't cached, or has changed.  one that can't be read comes back
+      // with mtime UNREAD.
+    private Cache.Dir read(FileEntry dir, List<Walker> subtasks, List<String> subdirs, int depth) {
+        long mtime = dir.lastModified();
+        long own = 0;
+        long[] links = new long[0];
+        int nlinks = 0;
+        int entries = 0;
+        try (DirectoryStream<Path> contents = Files.newDirectoryStream(dir.path())) {
+            for (Path p : contents) {
+                entries++;
+                FileEntry e;
+                try { e = FileEntry.lstat(p); }
+                catch (IOException x) { Metrics.error(x); continue; }   // vanished
+                if (e.isDirectory()) {
+                    subtasks.add(new Walker(this, e, depth + 1));
+                    subdirs.add(e.name());
+                } else if (e.links() > 1 && (options & COUNTLINKS) == 0) {
+                    if (nlinks + 3 > links.length) links = Arrays.copyOf(links, Math.max(12, links.length * 2));
+                    links[nlinks++] = e.device();
+                    links[nlinks++] = e.inode();
+                    links[nlinks++] = size(e);
+                } else own += size(e);
+            }
+        } catch (IOException e) {
+            String why = (e instanceof AccessDeniedException) ? "permission denied" : e.toString();
+            System.out.println("DiskUsage: Error: cannot read " + dir.path() + ": " + why);
+            Metrics.error(e);
+            mtime = Cache.Dir.UNREAD;
+        }
+        Metrics.add(Metrics.ENTRIES, entries);
+        return new Cache.Dir(mtime, dir.inode(), dir.device(), own, null, Arrays.copyOf(links, nlinks));
+    }
+
+      // the sizes of the hard linked files that haven't been counted yet
+    private long linked(long[] links) {
+        long total = 0;
+        for (int n = 0; n < links.length; n += 3)
+            if (linked.add(Arrays.asList(links[n], links[n + 1]))) total += links[n + 2];
+        return total;
+    }
+
+    private long size(FileEntry e) {
+        long size = Math.max(e.size(), 0);
+        if ((options & BYTES) != 0) return size;
+          // short link targets are kept in the inode itself, at least on ext4 and xfs
+        if (e.isSymbolicLink() && size < 60) return 0;
+        long block = blockSize(e);
+        return (size + block - 1) / block * block;
+    }
+
+    private long blockSize(FileEntry e) {
+        Long cached = blockSizes.get(e.device());
+        if (cached != null) return cached;
+        long size = 4096;
+        try {
+            FileStore store = Files.getFileStore(e.path());
+            size = Math.max(1, store.getBlockSize());
+        } catch (IOException | UnsupportedOperationException x) { }
+        blockSizes.put(e.device(), size);
+        return size;
+    }
+
+    private void write(Node node, OutputBuffer out) throws IOException {
+        for (Node child : node.children) write(child, out);
+          // allocated space is shown in 1K units like du, apparent sizes in bytes like du -b
+        long shown = ((options & BYTES) != 0) ? node.total : (node.total + 1023) / 1024;
+        out.append(shown).append('\t').append(node.path).newline();
+    }
+}
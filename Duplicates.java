@@ -0,0 +1,177 @@
+package cli;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+  // files with the same contents, in three rounds that each only look at what is left from the
+  // one before.  first the sizes, which the walk has already read: a file with a size of its
+  // own can't have a duplicate, and most never get opened.  then the first and last SAMPLE
+  // bytes, which tell apart most files that only share a size, like logs or images with a
+  // common header.  they are kept as a digest, so every candidate holds 32 bytes and not twice
+  // SAMPLE until its size group is split.  what is still together after that is hashed in
+  // full, reading the file through memory-mapped regions.  the samples and hashes of different files are read on a
+  // pool of threads, so a fast disk is kept busy instead of one core.
+  //
+  // hard links to the same inode are one file: it is only read once, and isn't reported as
+  // a duplicate of itself.  if it has duplicates, all its links are listed in their group.
+  // empty files are left out.
+  //
+  // add() is synchronized, so a parallel Find can feed it directly.
+public class Duplicates {
+
+    static final int SAMPLE = 4096;
+    static final long REGION = 64L << 20;       // bytes mapped at a time
+    static final String DIGEST = "SHA-256";
+
+    public Duplicates(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+      // a candidate, with its attributes.  anything but a non-empty regular file is ignored.
+    public synchronized void add(FileEntry e) {
+        if (e.type() != 'f' || e.size() <= 0) return;
+        if (e.inode() != 0) {
+            List<Long> id = Arrays.asList(e.device(), e.inode());
+            if (!inodes.add(id)) {
+                links.computeIfAbsent(id, k -> new ArrayList<FileEntry>()).add(e);
+                return;
+            }
+        }
+        bySize.computeIfAbsent(e.size(), k -> new ArrayList<FileEntry>()).add(e);
+    }
+
+      // the groups of two or more identical files, largest files first, each group by path
+    public List<List<FileEntry>> groups() throws IOException {
+        List<List<FileEntry>> sized = new ArrayList<List<FileEntry>>();
+        synchronized (this) {
+            for (List<FileEntry> group : bySize.values()) if (group.size() > 1) sized.add(group);
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<List<FileEntry>> sampled = split(pool, sized, e -> sample(e));
+              // a file no bigger than both samples has been read in full already
+            List<List<FileEntry>> small = new ArrayList<List<FileEntry>>();
+            List<List<FileEntry>> large = new ArrayList<List<FileEntry>>();
+            for (List<FileEntry> group : sampled) (group.get(0).size() <= 2 * SAMPLE ? small : large).add(group);
+            small.addAll(split(pool, large, e -> hash(e)));
+            synchronized (this) {
+                for (List<FileEntry> group : small) {
+                    List<FileEntry> more = new ArrayList<FileEntry>();
+                    for (FileEntry e : group) more.addAll(links.getOrDefault(Arrays.asList(e.device(), e.inode()), Collections.<FileEntry>emptyList()));
+                    group.addAll(more);
+                }
+            }
+            for (List<FileEntry> group : small) group.sort(Comparator.comparing((FileEntry e) -> e.path().toString()));
+            small.sort(Comparator.comparingLong((List<FileEntry> g) -> -g.get(0).size())
+                .thenComparing(g -> g.get(0).path().toString()));
+            return small;
+        } finally { pool.shutdown(); }
+    }
+
+    private interface Key {
+        ByteBuffer of(FileEntry e) throws IOException;
+    }
+
+    private final int parallelism;
+    private final Map<Long, List<FileEntry>> bySize = new HashMap<Long, List<FileEntry>>();
+    private final Set<List<Long>> inodes = new HashSet<List<Long>>();
+      // the links of an inode after the first one added, listed with it if it has duplicates
+    private final Map<List<Long>, List<FileEntry>> links = new HashMap<List<Long>, List<FileEntry>>();
+
+      // each group broken up by key, which is computed for every file on the pool.  files that
+      // can't be read anymore are dropped, and so are groups that end up with one file.
+    private static List<List<FileEntry>> split(ForkJoinPool pool, List<List<FileEntry>> groups, Key key) throws IOException {
+        List<Callable<ByteBuffer>> tasks = new ArrayList<Callable<ByteBuffer>>();
+        for (List<FileEntry> group : groups) for (FileEntry e : group) tasks.add(() -> {
+            try { return key.of(e); }
+            catch (IOException x) {
+                System.out.println("Find: Error: cannot read " + e.path() + ": " + x.toString());
+                Metrics.error(x);
+                return null;
+            }
+        });
+        List<Future<ByteBuffer>> keys = pool.invokeAll(tasks);
+        List<List<FileEntry>> out = new ArrayList<List<FileEntry>>();
+        int n = 0;
+        for (List<FileEntry> group : groups) {
+            Map<ByteBuffer, List<FileEntry>> byKey = new HashMap<ByteBuffer, List<FileEntry>>();
+            for (FileEntry e : group) {
+                ByteBuffer k = value(keys.get(n++));
+                if (k != null) byKey.computeIfAbsent(k, x -> new ArrayList<FileEntry>()).add(e);
+            }
+            for (List<FileEntry> same : byKey.values()) if (same.size() > 1) out.add(same);
+        }
+        return out;
+    }
+
+    private static ByteBuffer value(Future<ByteBuffer> f) throws IOException {
+        try { return f.get(); }
+        catch (InterruptedException e) { throw new IOException(e); }
+        catch (ExecutionException e) { throw new IOException(e.getCause()); }
+    }
+
+      // the digest of the first and last SAMPLE bytes, or of the whole file if it is smaller
+      // than that
+    private static ByteBuffer sample(FileEntry e) throws IOException {
+        try (FileChannel ch = FileChannel.open(e.path(), StandardOpenOption.READ)) {
+            long size = e.size();
+            ByteBuffer buf = ByteBuffer.allocate((int) Math.min(size, 2 * SAMPLE));
+            if (size <= 2 * SAMPLE) read(ch, buf, 0);
+            else {
+                buf.limit(SAMPLE);
+                read(ch, buf, 0);
+                buf.limit(2 * SAMPLE);
+                read(ch, buf, size - SAMPLE);
+            }
+            buf.flip();
+            MessageDigest digest = digest();
+            digest.update(buf);
+            return ByteBuffer.wrap(digest.digest());
+        }
+    }
+
+      // fills buf from position at, or fails if the file got shorter
+    private static void read(FileChannel ch, ByteBuffer buf, long at) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = ch.read(buf, at);
+            if (n < 0) throw new IOException("file changed while reading");
+            at += n;
+        }
+    }
+
+    private static ByteBuffer hash(FileEntry e) throws IOException {
+        MessageDigest digest = digest();
+        try (FileChannel ch = FileChannel.open(e.path(), StandardOpenOption.READ)) {
+            long size = e.size();
+            if (ch.size() != size) throw new IOException("file changed while reading");
+            for (long at = 0; at < size; at += REGION) {
+                MappedByteBuffer region = ch.map(FileChannel.MapMode.READ_ONLY, at, Math.min(REGION, size - at));
+                digest.update(region);
+            }
+        }
+        return ByteBuffer.wrap(digest.digest());
+    }
+
+    private static MessageDigest digest() throws IOException {
+        try { return MessageDigest.getInstance(DIGEST); }
+        catch (NoSuchAlgorithmException x) { throw new IOException(x); }
+    }
+}
@@ -0,0 +1,276 @@
+package cli;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Comparator;
+
+  // compact store for very large result sets, e.g. everything Find turns up under /.
+  // instead of an object with a full path per result, each row holds the index of its parent
+  // directory's row and its own name, so a prefix shared by a million files is stored once.
+  // names live back to back in one UTF-8 byte arena, and attributes in primitive columns:
+  // about 40 bytes a row plus the name, against several hundred for a FileEntry or File with
+  // its canonical path.
+  //
+  // directories that contain results but aren't results themselves are stored as rows too,
+  // without attributes.  paths are only put together again for output: write() copies them
+  // straight from the arena, and entry() builds a FileEntry for a single row.
+  //
+  // add() is synchronized, so a parallel Find can fill a table directly.  everything else
+  // should wait until it is done.
+public class EntryTable {
+
+    public EntryTable() {
+        this(1024);
+    }
+
+    public EntryTable(int capacity) {
+        capacity = Math.max(capacity, 16);
+        parent  = new int[capacity];
+        start   = new int[capacity + 1];
+        size    = new long[capacity];
+        mtime   = new long[capacity];
+        mode    = new int[capacity];
+        uid     = new int[capacity];
+        gid     = new int[capacity];
+        type    = new byte[capacity];
+        flags   = new byte[capacity];
+        arena   = new byte[capacity * 16];
+        slots   = new int[64];
+    }
+
+    public synchronized void add(FileEntry e) {
+        Path p = e.path();
+        byte[] name = e.name().getBytes(StandardCharsets.UTF_8);
+        int up = directory(p.getParent());
+        int row = e.isDirectory() ? find(up, name) : -1;
+        if (row == -1) row = append(up, name);
+        if ((flags[row] & RESULT) == 0) results++;
+        size[row]  = e.size();
+        mtime[row] = e.lastModified();
+        mode[row]  = e.mode();
+        uid[row]   = e.uid();
+        gid[row]   = e.gid();
+        type[row]  = (byte) e.type();
+        flags[row] = (byte) (RESULT | (e.isSymbolicLink() ? LINK : 0) | (e.hasAttributes() ? COMPLETE : 0));
+        if (e.isDirectory() && find(up, name) == -1) intern(row);
+    }
+
+      // number of results, not counting the directories that were only stored as parents
+    public int size() {
+        return results;
+    }
+
+      // the results in the order they were added, or sorted by FileList's BYSIZE, BYTIME and
+      // REVERSE options, with the name as the final tie-break.  the values are row numbers
+      // for path(), entry() and write().
+    public int[] order(int options) {
+        int[] rows = new int[results];
+        int n = 0;
+        for (int row = 0; row < count; row++) if ((flags[row] & RESULT) != 0) rows[n++] = row;
+        if ((options & (FileList.BYSIZE | FileList.BYTIME)) != 0) {
+            Key[] keys = new Key[n];
+            for (int i = 0; i < n; i++) keys[i] = key(rows[i], options);
+            if (n >= FileSort.PARALLEL_THRESHOLD) Arrays.parallelSort(keys, byKey);
+            else Arrays.sort(keys, byKey);
+            for (int i = 0; i < n; i++) rows[i] = keys[i].row;
+        }
+        if ((options & FileList.REVERSE) != 0)
+            for (int i = 0, j = n - 1; i < j; i++, j--) { int t = rows[i]; rows[i] = rows[j]; rows[j] = t; }
+        return rows;
+    }
+
+    public String path(int row) {
+        return new String(pathBytes(row), StandardCharsets.UTF_8);
+    }
+
+      // the row as a FileEntry, with the attributes it was added with
+    public FileEntry entry(int row) {
+        return FileEntry.restore(Paths.get(path(row)), (char) type[row], (flags[row] & LINK) != 0,
+            size[row], mtime[row], mode[row], uid[row], gid[row], (flags[row] & COMPLETE) != 0);
+    }
+
+    public boolean isDirectory(int row) {
+        return type[row] == 'd';
+    }
+
+      // the path of the row, and a separator if it is a directory, like Find prints it
+    public void write(int row, OutputBuffer out) throws IOException {
+        byte[] path = pathBytes(row);
+        out.write(path, 0, path.length);
+        if (isDirectory(row) && path[path.length - 1] != '/') out.append('/');
+    }
+
+      // every result, one per line, in the order given by options (see order())
+    public void write(OutputBuffer out, int options) throws IOException {
+        for (int row : order(options)) {
+            write(row, out);
+            out.newline();
+        }
+    }
+
+    private static final byte RESULT   = 1;     // added, not just a parent of something that was
+    private static final byte LINK     = 2;
+    private static final byte COMPLETE = 4;     // attributes were read, see FileEntry.hasAttributes
+
+    private int count;              // rows
+    private int results;
+    private int[] parent;           // row of the parent directory, or -1
+    private int[] start;            // name of row r is arena[start[r] .. start[r + 1])
+    private long[] size;
+    private long[] mtime;
+    private int[] mode;
+    private int[] uid;
+    private int[] gid;
+    private byte[] type;
+    private byte[] flags;
+    private byte[] arena;
+    private int[] slots;            // open addressing: (parent, name) of directory rows -> row + 1
+    private int directories;
+    private Path lastDir;           // results tend to come a directory at a time
+    private int lastRow = -1;
+
+      // row of the directory dir, added without attributes if it isn't there yet
+    private int directory(Path dir) {
+        if (dir == null) return -1;
+        if (dir.equals(lastDir)) return lastRow;
+        Path fileName = dir.getFileName();
+        byte[] name = ((fileName == null) ? dir.toString() : fileName.toString()).getBytes(StandardCharsets.UTF_8);
+        int up = directory(dir.getParent());
+        int row = find(up, name);
+        if (row == -1) {
+            row = append(up, name);
+            type[row] = 'd';
+            mode[row] = uid[row] = gid[row] = -1;
+            size[row] = -1;
+            intern(row);
+        }
+        lastDir = dir;
+        lastRow = row;
+        return row;
+    }
+
+    private int append(int up, byte[] name) {
+        if (count == parent.length) grow();
+        int from = start[count];
+        if (from + name.length > arena.length)
+            arena = Arrays.copyOf(arena, Math.max(arena.length * 2, from + name.length));
+        System.arraycopy(name, 0, arena, from, name.length);
+        parent[count] = up;
+        start[count + 1] = from + name.length;
+        return count++;
+    }
+
+    private void grow() {
+        int n = parent.length * 2;
+        parent = Arrays.copyOf(parent, n);
+        start  = Arrays.copyOf(start, n + 1);
+        size   = Arrays.copyOf(size, n);
+        mtime  = Arrays.copyOf(mtime, n);
+        mode   = Arrays.copyOf(mode, n);
+        uid    = Arrays.copyOf(uid, n);
+        gid    = Arrays.copyOf(gid, n);
+        type   = Arrays.copyOf(type, n);
+        flags  = Arrays.copyOf(flags, n);
+    }
+
+    private int find(int up, byte[] name) {
+        int mask = slots.length - 1;
+        for (int i = hash(up, name, 0, name.length) & mask; slots[i] != 0; i = (i + 1) & mask) {
+            int row = slots[i] - 1;
+            if (parent[row] == up && nameEquals(row, name)) return row;
+        }
+        return -1;
+    }
+
+    private void intern(int row) {
+        if (++directories * 2 > slots.length) {
+            int[] old = slots;
+            slots = new int[old.length * 2];
+            for (int s : old) if (s != 0) place(s - 1);
+        }
+        place(row);
+    }
+
+    private void place(int row) {
+        int mask = slots.length - 1;
+        int i = hash(parent[row], arena, start[row], start[row + 1]) & mask;
+        while (slots[i] != 0) i = (i + 1) & mask;
+        slots[i] = row + 1;
+    }
+
+    private static int hash(int up, byte[] b, int from, int to) {
+        int h = up * 0x9e3779b9;
+        for (int n = from; n < to; n++) h = (h ^ b[n]) * 0x01000193;
+        return h ^ (h >>> 16);
+    }
+
+    private boolean nameEquals(int row, byte[] name) {
+        int from = start[row];
+        if (start[row + 1] - from != name.length) return false;
+        for (int n = 0; n < name.length; n++) if (arena[from + n] != name[n]) return false;
+        return true;
+    }
+
+    private byte[] pathBytes(int row) {
+        int length = 0;
+        int depth = 0;
+        for (int r = row; r != -1; r = parent[r]) {
+            length += start[r + 1] - start[r] + 1;
+            depth++;
+        }
+        byte[] out = new byte[length];
+        int end = length;
+          // filled from the back: name, then separator, then the parent's name
+        for (int r = row; r != -1; r = parent[r]) {
+            int n = start[r + 1] - start[r];
+            end -= n;
+            System.arraycopy(arena, start[r], out, end, n);
+            if (parent[r] != -1) {
+                int pn = start[parent[r] + 1] - start[parent[r]];
+                  // no separator after a root that already ends in one, like "/"
+                if (pn == 0 || arena[start[parent[r] + 1] - 1] != '/') out[--end] = '/';
+            }
+        }
+        return (end == 0) ? out : Arrays.copyOfRange(out, end, length);
+    }
+
+    private Key key(int row, int options) {
+        long first, second;
+        switch (options & (FileList.BYSIZE | FileList.BYTIME)) {
+            case FileList.BYSIZE: first = -size[row]; second = 0; break;
+            case FileList.BYTIME: first = -mtime[row]; second = 0; break;
+            default:              first = -size[row]; second = -mtime[row]; break;
+        }
+        return new Key(first, second, row);
+    }
+
+      // as in FileSort, but the names are compared in the arena, as unsigned UTF-8 bytes
+    private static final class Key {
+        final long first;
+        final long second;
+        final int row;
+
+        Key(long first, long second, int row) {
+            this.first = first;
+            this.second = second;
+            this.row = row;
+        }
+    }
+
+    private final Comparator<Key> byKey = new Comparator<Key>() {
+        public int compare(Key a, Key b) {
+            if (a.first != b.first) return a.first < b.first ? -1 : 1;
+            if (a.second != b.second) return a.second < b.second ? -1 : 1;
+            int i = start[a.row], ie = start[a.row + 1];
+            int j = start[b.row], je = start[b.row + 1];
+            for (; i < ie && j < je; i++, j++) {
+                int c = (arena[i] & 0xff) - (arena[j] & 0xff);
+                if (c != 0) return c;
+            }
+            return (ie - i) - (je - j);
+        }
+    };
+}
@@ -0,0 +1,244 @@
+package cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+  // an immutable snapshot of one file, taken from a single attribute read.  FileList and Find
+  // keep these instead of File objects, so that filtering, sorting, formatting and coloring
+  // never have to go back to the file system.
+public class FileEntry {
+
+      // everything we need from the "unix" view in one stat call.  owner and group names are
+      // left out: the view would look them up for every file, while there are usually only a
+      // handful of distinct uids and gids.  see owner() and group().
+    private static final String UNIX_ATTRIBUTES =
+        "unix:mode,ino,dev,nlink,uid,gid,size,lastModifiedTime";
+
+      // uid and gid to name, filled on first use from the file that had them
+    private static final Map<Integer, String> USERS = new ConcurrentHashMap<Integer, String>();
+    private static final Map<Integer, String> GROUPS = new ConcurrentHashMap<Integer, String>();
+
+    public static FileEntry of(File f) throws IOException {
+        return of(f.toPath());
+    }
+
+      // symbolic links are followed, like File and Files.isDirectory do, but the link itself
+      // is read first so isSymbolicLink() can tell.  that costs a second stat for links only.
+    public static FileEntry of(Path p) throws IOException {
+        return of(p, true);
+    }
+
+      // like of(p), but a symbolic link is described as itself, as du and find -P see it
+    static FileEntry lstat(Path p) throws IOException {
+        return of(p, false);
+    }
+
+    private static FileEntry of(Path p, boolean follow) throws IOException {
+        Map<String, Object> attrs;
+        long t = Metrics.start();
+        Metrics.increment(Metrics.STATS);
+        try {
+            attrs = Files.readAttributes(p, UNIX_ATTRIBUTES, LinkOption.NOFOLLOW_LINKS);
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+              // no unix view on this file system, settle for the basic attributes
+            return of(p, follow ? Files.readAttributes(p, BasicFileAttributes.class)
+                                : Files.readAttributes(p, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS));
+        } finally { Metrics.stop(Metrics.STAT, t); }
+        boolean link = typeOf((Integer) attrs.get("mode")) == 'l';
+        if (link && follow) {
+            t = Metrics.start();
+            Metrics.increment(Metrics.STATS);
+            try { attrs = Files.readAttributes(p, UNIX_ATTRIBUTES); }
+            finally { Metrics.stop(Metrics.STAT, t); }
+        }
+        int mode = (Integer) attrs.get("mode");
+        return new FileEntry(p, typeOf(mode), link,
+            (Long) attrs.get("size"),
+            ((FileTime) attrs.get("lastModifiedTime")).toMillis(),
+            mode & 07777,
+            (Integer) attrs.get("uid"),
+            (Integer) attrs.get("gid"),
+            null, null,
+            (Long) attrs.get("ino"),
+            (Long) attrs.get("dev"),
+            (Integer) attrs.get("nlink"),
+            true);
+    }
+
+      // build an entry from attributes that were already read, e.g. during a tree walk.
+      // permissions and ownership are unknown.
+    public static FileEntry of(Path p, BasicFileAttributes attrs) {
+        char type = attrs.isDirectory() ? 'd' : attrs.isRegularFile() ? 'f' : attrs.isSymbolicLink() ? 'l' : '?';
+        return new FileEntry(p, type, false, attrs.size(), attrs.lastModifiedTime().toMillis(),
+            -1, -1, -1, "?", "?", 0, 0, 1, true);
+    }
+
+      // an entry that hasn't been stat'ed, where only the name and whether it is a directory
+      // are known, e.g. because the tree walk could tell without asking.  see full().
+    static FileEntry partial(Path p, boolean directory) {
+        return new FileEntry(p, directory ? 'd' : '?', false, -1, 0, -1, -1, -1, "?", "?", 0, 0, 1, false);
+    }
+
+      // an entry put back together from stored columns, see EntryTable.  owner and group
+      // are resolved from uid and gid like for a fresh one; inode, device and links are lost.
+    static FileEntry restore(Path p, char type, boolean link, long size, long lastModified,
+                             int mode, int uid, int gid, boolean complete) {
+        return new FileEntry(p, type, link, size, lastModified, mode, uid, gid,
+            uid == -1 ? "?" : null, gid == -1 ? "?" : null, 0, 0, 1, complete);
+    }
+
+      // this entry if its attributes were read, else a freshly stat'ed one
+    public FileEntry full() throws IOException {
+        return complete ? this : of(path);
+    }
+
+    public Path path()           { return path; }
+    public File file()           { return path.toFile(); }
+    public String name()         { return name; }
+    public boolean isDirectory() { return type == 'd'; }
+    public char type()           { return type; }     // d, f, l, p, s, c, b as in find -type, or ?
+    public boolean isSymbolicLink() { return link; }  // the attributes are those of the target, unless lstat()
+    public boolean hasAttributes()  { return complete; }
+    public boolean isHidden()    { return name.length() > 0 && name.charAt(0) == '.'; }
+    public long size()           { return size; }
+    public long lastModified()   { return lastModified; }
+    public int mode()            { return mode; }     // permission bits, -1 if unknown
+    public int uid()             { return uid; }
+    public int gid()             { return gid; }
+    public String owner()        { return (owner != null) ? owner : name(USERS, uid, "unix:owner"); }
+    public String group()        { return (group != null) ? group : name(GROUPS, gid, "unix:group"); }
+    public long inode()          { return inode; }
+    public long device()         { return device; }
+    public int links()           { return links; }
+
+      // access checks are answered from the mode bits against the current user,
+      // instead of an access() call per file.  unknown modes are assumed accessible.
+    public boolean canRead()     { return allows(4); }
+    public boolean canWrite()    { return allows(2); }
+    public boolean canExecute()  { return allows(1); }
+
+      // permissions in the rwxr-xr-x form, like PosixFilePermissions.toString()
+    public String permissions() {
+        char[] out = new char[9];
+        for (int n = 0; n < 9; n++) {
+            int bit = 1 << (8 - n);
+            out[n] = (mode != -1 && (mode & bit) != 0) ? "rwx".charAt(n % 3) : '-';
+        }
+        return new String(out);
+    }
+
+    public String toString() {
+        return path.toString();
+    }
+
+    private final Path path;
+    private final String name;
+    private final char type;
+    private final boolean link;
+    private final long size;
+    private final long lastModified;
+    private final int mode;
+    private final int uid;
+    private final int gid;
+    private final String owner;
+    private final String group;
+    private final long inode;
+    private final long device;
+    private final int links;
+    private final boolean complete;
+
+      // for entries whose size and time come from elsewhere, e.g. an index
+    FileEntry(Path path, boolean directory, long size, long lastModified, int mode, int uid, int gid,
+              String owner, String group, long inode, long device, int links) {
+        this(path, directory ? 'd' : '?', false, size, lastModified, mode, uid, gid, owner, group, inode, device, links, false);
+    }
+
+    private FileEntry(Path path, char type, boolean link, long size, long lastModified, int mode, int uid, int gid,
+              String owner, String group, long inode, long device, int links, boolean complete) {
+        this.path = path;
+        Path fileName = path.getFileName();
+        this.name = (fileName == null) ? path.toString() : fileName.toString();
+        this.type = type;
+        this.link = link;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.mode = mode;
+        this.uid = uid;
+        this.gid = gid;
+        this.owner = owner;
+        this.group = group;
+        this.inode = inode;
+        this.device = device;
+        this.links = links;
+        this.complete = complete;
+    }
+
+      // the name of a uid or gid from the cache, or else from the attribute view of this file.
+      // if the file is gone by now, the number stands in for the name.
+    private String name(Map<Integer, String> cache, int id, String attribute) {
+        String name = cache.get(id);
+        if (name != null) return name;
+        try {
+            name = ((UserPrincipal) Files.getAttribute(path, attribute)).getName();
+        } catch (IOException | RuntimeException e) {
+            return Integer.toString(id);
+        }
+        cache.put(id, name);
+        return name;
+    }
+
+    private static char typeOf(int mode) {
+        switch ((mode >> 12) & 017) {
+            case 004: return 'd';
+            case 010: return 'f';
+            case 012: return 'l';
+            case 001: return 'p';
+            case 014: return 's';
+            case 002: return 'c';
+            case 006: return 'b';
+            default:  return '?';
+        }
+    }
+
+    private boolean allows(int bits) {
+        if (mode == -1 || Identity.uid == -1) return true;
+        if (Identity.uid == 0) return bits != 1 || (mode & 0111) != 0;
+        if (uid == Identity.uid) return (mode & (bits << 6)) != 0;
+        if (Identity.isMember(gid)) return (mode & (bits << 3)) != 0;
+        return (mode & bits) != 0;
+    }
+
+      // the uid and groups of the process, looked up once.  -1 if the platform can't tell us.
+    private static class Identity {
+        static final long uid;
+        static final long[] groups;
+
+        static {
+            long u = -1;
+            long[] g = new long[0];
+            try {
+                com.sun.security.auth.module.UnixSystem us = new com.sun.security.auth.module.UnixSystem();
+                u = us.getUid();
+                long[] supplementary = us.getGroups();
+                g = new long[supplementary.length + 1];
+                g[0] = us.getGid();
+                System.arraycopy(supplementary, 0, g, 1, supplementary.length);
+            } catch (Throwable t) { }
+            uid = u;
+            groups = g;
+        }
+
+        static boolean isMember(int gid) {
+            for (long g : groups) if (g == gid) return true;
+            return false;
+        }
+    }
+}
@@ -7,6 +7,16 @@ import java.io.FileNotFoundException;
 import java.lang.SecurityException;
 import java.lang.RuntimeException;
 import java.util.Collection;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.TreeSet;
@@ -25,29 +35,68 @@ import java.time.ZoneId;
 import java.util.Date;
 import java.time.LocalDate;
 import java.nio.file.attribute.PosixFileAttributes;
-import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
 import java.nio.file.attribute.PosixFilePermissions;
 import java.nio.file.attribute.PosixFilePermission;
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.util.stream.Collectors;
 import java.util.Formatter;
 
 public class FileList {
 
     public static FileList of(String pattern, int ... options) throws IOException, FileNotFoundException, SecurityException {
+        return read(pattern, null, options);
+    }
+
+      // FileList.of, but errors with single entries are added to errors instead of printed,
+      // if it isn't null
+    private static FileList read(String pattern, List<Exception> errors, int ... options) throws IOException, FileNotFoundException, SecurityException {
         File dir = new File(pattern);
         if (!dir.exists()) throw new FileNotFoundException("cannot access " + pattern + ": No such file or directory");
         if (!dir.canRead()) throw new SecurityException("cannot access " + pattern + ": Permission denied");
-        File[] contents = dir.listFiles();
         FileList fl = FileList.empty(options);
         fl.path = pattern;
-        for ( File f : contents ) { 
+          // served from memory if a TreeCache is installed and watching this directory
+        List<FileEntry> cached = TreeCache.lookup(dir.toPath());
+        if (cached != null) {
+            for (FileEntry e : cached) fl.add(e);
+            return fl;
+        }
+        Object event = Metrics.directoryStart();
+        long t = Metrics.start();
+        File[] contents = dir.listFiles();
+        Metrics.stop(Metrics.READ, t);
+        if (contents == null) throw new IOException("cannot read " + pattern);
+          // with a concurrency above 1, all the entries are stat'ed at once and then added in
+          // the order they were listed, so the result is the same as one at a time
+        FileEntry[] entries = null;
+        Exception[] failures = null;
+        if (concurrency > 1 && contents.length > 1) {
+            entries = new FileEntry[contents.length];
+            failures = new Exception[contents.length];
+            fl.fetch(contents, entries, failures);
+        }
+        int failed = 0;
+        for (int n = 0; n < contents.length; n++) { 
             try {
-                fl.add(f);
-            } catch (Exception e) { System.out.println(e.getMessage()); }
+                if (entries == null) fl.add(contents[n]);
+                else if (failures[n] != null) throw failures[n];
+                else if (entries[n] != null) fl.add(entries[n]);
+            } catch (Exception e) {
+                if (errors != null) errors.add(e);
+                else report(e);
+                failed++;
+            }
         }
-        
+        Metrics.increment(Metrics.DIRECTORIES);
+        Metrics.add(Metrics.ENTRIES, contents.length);
+        Metrics.directoryRead(event, pattern, contents.length, failed);
         return fl;
     }
 
@@ -60,39 +109,64 @@ public class FileList {
 
     public List<File> files() {
         ArrayList<File> fl = new ArrayList<File>(files.size());
-        fl.addAll(files);
+        for (FileEntry e : ordered()) fl.add(e.file());
         return fl;
     }
 
+    public List<FileEntry> entries() {
+        return new ArrayList<FileEntry>(ordered());
+    }
+
     public boolean contains(File f) {
-        return files.contains(f);
+        Path p = f.toPath();
+        for (FileEntry e : files) if (e.path().equals(p)) return true;
+        return false;
+    }
+
+      // true if add() would keep this entry, i.e. it isn't filtered out by the options
+    public boolean accepts(FileEntry e) {
+        return !isSkippedHidden(e.name());
     }
 
     public void add(File f) throws FileNotFoundException, IOException, SecurityException {
-        if (!f.exists()) throw new FileNotFoundException("cannot access " + f.getCanonicalPath() + ": No such file or directory");
-        //if (!f.canRead()) throw new SecurityException("cannot access " + f.getName() + ": Permission denied");
+            // skip hidden files if ALL isn't set.  checked before the stat, since it only needs the name
+        if (isSkippedHidden(f.getName())) return;
+        //if (!e.canRead()) throw new SecurityException("cannot access " + f.getName() + ": Permission denied");
+        add(stat(f));
+    }
 
-            // skip hidden files if ALL isn't set
-        if ( ((activeOptions & ALL) != ALL) && (f.getName().charAt(0) == '.') ) return;
+      // how many attribute reads FileList.of may have outstanding at once, across all threads.
+      // 1 (the default) reads them one at a time; on network and FUSE file systems, where each
+      // one is a round trip, a few hundred can be worth it.
+    public static void concurrency(int n) {
+        if (n < 1) throw new IllegalArgumentException("concurrency must be at least 1");
+        fetchPermits = new Semaphore(n);
+        concurrency = n;
+    }
+
+    public void add(FileEntry e) throws IOException {
+        if (isSkippedHidden(e.name())) return;
+          // entries that were never stat'ed (see Find) get their attributes now, if we need them
+        if (!e.hasAttributes() && (activeOptions & (EXTENDED | BYTIME | BYSIZE | USECOLOR)) != 0) e = e.full();
 
-        if ( ((activeOptions & RECURSE) == RECURSE) && (f.isDirectory())) {
+        if ( ((activeOptions & RECURSE) == RECURSE) && (e.isDirectory())) {
             // recursively add subdirectory
             // all we do here is append the found subdirectory to a string list
             // to be processed elsewhere
-            subDirs.add(f.getCanonicalPath());
+            subDirs.add(e.file().getCanonicalPath());
         }
             // conditions passed.  add file.  if printing extended, calculate widths of text fields.
         int x;
         if ( ((activeOptions & EXTENDED) == EXTENDED)) {
-            PosixFileAttributes attrs = Files.readAttributes(f.toPath(), PosixFileAttributes.class);
-            x = attrs.owner().toString().length();
+            x = e.owner().length();
             if (x > ownerLength) ownerLength = x; 
-            x = attrs.group().toString().length();
+            x = e.group().length();
             if (x > groupLength) groupLength = x;
-            x = (int)(Math.log10(attrs.size())+1);
+            x = OutputBuffer.digits(Math.max(e.size(), 0));
             if (x > sizeLength) sizeLength = x;
         } 
-        files.add(f);
+        files.add(e);
+        sorted = false;
     }
 
     public boolean isEmpty() {
@@ -103,31 +177,111 @@ public class FileList {
           // first, generate format string based on calculated widths of text fields calculated during file add 
         formatString = String.format("%%s. %%-%ds %%-%ds %%%dd %%s %%s", ownerLength, groupLength, sizeLength); 
         List<String> output = new ArrayList<String>(files.size());
+        List<FileEntry> entries = ordered();
+        long t = Metrics.start();
         try {
             if ((activeOptions & EXTENDED) == EXTENDED)
-                 for (File f : files) output.add(formatExtended(f));
-            else for (File f : files) output.add(formatPlain(f));
-        }      catch (Exception e)  { System.out.println(e.getMessage()); }
+                 for (FileEntry e : entries) output.add(formatExtended(e));
+            else for (FileEntry e : entries) output.add(formatPlain(e));
+        }      catch (Exception e)  { report(e); }
+        Metrics.stop(Metrics.FORMAT, t);
         return output;   
     }
 
+      // format a single entry with this list's options, e.g. for output that is streamed
+      // rather than collected.  extended format uses the field widths seen so far.
+    public String format(FileEntry e) throws IOException {
+        if ((activeOptions & EXTENDED) != EXTENDED) return formatPlain(e);
+        formatString = String.format("%%s. %%-%ds %%-%ds %%%dd %%s %%s", ownerLength, groupLength, sizeLength); 
+        return formatExtended(e);
+    }
+
+      // write every entry, one per line, straight into out without building Strings for them.
+      // unlike format(), REVERSE is applied here.
+    public void format(OutputBuffer out) throws IOException {
+        List<FileEntry> entries = ordered();
+        boolean reverse = (activeOptions & REVERSE) == REVERSE;
+        long t = Metrics.start();
+        try {
+            for (int n = 0; n < entries.size(); n++)
+                write(entries.get(reverse ? entries.size() - 1 - n : n), out);
+        } finally { Metrics.stop(Metrics.FORMAT, t); }
+    }
+
+      // write a single entry and a newline into out, see format(FileEntry)
+    public void format(FileEntry e, OutputBuffer out) throws IOException {
+        long t = Metrics.start();
+        try { write(e, out); }
+        finally { Metrics.stop(Metrics.FORMAT, t); }
+    }
+
     public static void main(String ... args) {
+          // all output, including the error messages printed along the way, goes through one
+          // block buffer so it stays in order.  flushed at the end, and by exit paths.
+        OutputBuffer out = new OutputBuffer(new FileOutputStream(FileDescriptor.out));
+        System.setOut(new PrintStream(out, false));
+          // -stats prints the run's Metrics to stderr when done, so they stay out of the listing.
+          // spelled like Find's and DiskUsage's; --stats, as FileList first had it, works too.
+        if (Arrays.asList(args).contains("-stats") || Arrays.asList(args).contains("--stats")) Metrics.enable();
+          // records are for programs, so error messages go to stderr instead of between them
+        if (Arrays.asList(args).contains("--ndjson") || Arrays.asList(args).contains("--binary")) System.setOut(System.err);
+        try { list(out, args); }
+        finally {
+            System.out.flush();
+            try { out.flush(); }
+            catch (IOException e) { }
+        }
+        Metrics m = Metrics.current();
+        if (m != null) for (String line : m.summary()) System.err.println("FileList: Stats: " + line);
+    }
+
+    private static void list(OutputBuffer out, String ... args) {
         char c;
         int options = 0;
         int numItems = 0;
         int index = 0;
         String workingDir = System.getProperty("user.dir");
+        int top = 0;
         List<File> items = new ArrayList<File>();
-        for (String arg : args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("-stats") || arg.equals("--stats")) continue;    // see main
+            if (arg.equals("--ndjson")) { options = options | NDJSON; continue; }
+            if (arg.equals("--binary")) { options = options | BINARY; continue; }
+            if (arg.startsWith("--concurrency=")) {
+                int n;
+                try { n = Integer.parseInt(arg.substring(14)); }
+                catch (NumberFormatException e) { n = 0; }
+                if (n < 1) {
+                    System.out.println("Invalid argument '" + arg.substring(14) + "' to --concurrency");
+                    System.out.flush();
+                    System.exit(1);
+                }
+                concurrency(n);
+                continue;
+            }
             // an argument would definitely have at least one character
             switch(arg.charAt(0)) {
                 case '-':    // process option
                     for (int n = 1; n < arg.length(); n++) {
                         c = arg.charAt(n);
+                        if (c == 'n') {
+                              // -n K or -nK, the count can't be followed by more options
+                            String count = (n + 1 < arg.length()) ? arg.substring(n + 1) : (i + 1 < args.length) ? args[++i] : "";
+                            try { top = Integer.parseInt(count); }
+                            catch (NumberFormatException e) { top = 0; }
+                            if (top < 1) {
+                                System.out.println("Invalid argument '" + count + "' to -n");
+                                System.out.flush();
+                                System.exit(1);
+                            }
+                            break;
+                        }
                         if (OPTIONKEY.containsKey(c)) options = options | OPTIONKEY.get(c);
                         else { // option not found - print valid options and quit
                             System.out.println("Invalid option -- '" + c + "'");
                             FileList.displayOptions();
+                            System.out.flush();
                             System.exit(1);
                         } 
                     }
@@ -142,7 +296,27 @@ public class FileList {
         }
 
           // if asked for help, print the message and quit
-        if ((options & HELPME) == HELPME) { FileList.displayHelp(); System.exit(0); }
+        if ((options & HELPME) == HELPME) { FileList.displayHelp(); System.out.flush(); System.exit(0); }
+
+        if ((options & NDJSON) != 0 && (options & BINARY) != 0) {
+            System.out.println("Options --ndjson and --binary can't be used together");
+            System.out.flush();
+            System.exit(1);
+        }
+        if ((options & BINARY) == BINARY) {
+            try { Records.header(out); }
+            catch (IOException e) { report(e); }
+        }
+
+        if (top > 0) {
+            if ((options & (BYSIZE | BYTIME)) == 0) {
+                System.out.println("Option -n needs -S or -t");
+                System.out.flush();
+                System.exit(1);
+            }
+            top(out, items, workingDir, options, top);
+            return;
+        }
 
         FileList localItems;
 
@@ -150,81 +324,191 @@ public class FileList {
         if (items.isEmpty()) { 
             try { localItems = FileList.of(workingDir, options); } 
             catch (Exception e) { 
-                System.out.println(e.getMessage());
+                report(e);
                 localItems = FileList.empty(options);
             }
         } else localItems = FileList.empty(options);
 
-          // subdirItems will contain contents of parameters that are directories, 
-          // and recursively added subfolders
-        List<FileList> subdirItems = new ArrayList<FileList>();
+          // directories are read ahead on worker threads, but reported and printed here in
+          // the same order as a plain breadth first traversal would.  the queue holds the paths
+          // of the directories still to be printed; only the first LOOKAHEAD of them are read
+          // ahead, so at most that many lists are held, and each is dropped once printed.
+        ExecutorService pool = Executors.newFixedThreadPool(READERS, r -> {
+            Thread t = new Thread(r, "FileList reader");
+            t.setDaemon(true);
+            return t;
+        });
+        Deque<Pending> queue = new ArrayDeque<Pending>();
+        try {
+              // start reading every directory parameter, then go through the parameters in order
+            List<Future<Listing>> reads = new ArrayList<Future<Listing>>();
+            for (File item : items) {
+                if (!item.isDirectory()) { reads.add(null); continue; }
+                try {
+                    String path = item.getCanonicalPath();
+                    int o = options;
+                    reads.add(pool.submit(() -> Listing.read(path, o)));
+                } catch (IOException e) { reads.add(CompletableFuture.completedFuture(Listing.failed(e))); }
+            }
+            for (int i = 0; i < items.size(); i++) {
+                if (reads.get(i) == null) {
+                      // if its not a directory is a globbed file - add to localItems
+                    try { localItems.add(items.get(i)); }
+                    catch (Exception e) { report(e); }
+                    continue;
+                }
+                numItems++;
+                Listing l = Listing.await(reads.get(i));
+                if (l.report()) queue.add(new Pending(null, CompletableFuture.completedFuture(l)));
+            }
+
+              // if recursing, add subdirs from the localItems first
+            for (String subDir : localItems.subDirectories()) {
+                numItems++;
+                queue.add(new Pending(subDir, null));
+            }
+
+              // first print any items in the current working dir i.e. result of globbing or no parameters at all
+            if (!localItems.isEmpty()) {
+                try {
+                    index++;
+                    localItems.format(out);
+                } catch (Exception e) { report(e); }
+            }
+
+              // print the contents of any explicitly passed folders, and of their subdirectories
+              // if we are recursing.  a directory's errors are reported just before its list.
+            Pending p;
+            while ((p = queue.poll()) != null) {
+                  // keep the next few queued directories coming
+                int ahead = 0;
+                for (Pending next : queue) {
+                    if (ahead++ == LOOKAHEAD) break;
+                    next.start(pool, options);
+                }
+                p.start(pool, options);
+                Listing l = Listing.await(p.read);
+                if (!l.report()) continue;
+                for (String subDir : l.list.subDirectories()) {
+                    numItems++;
+                    queue.add(new Pending(subDir, null));
+                }
 
-          // now loop through passed or globbed file parameters
+                  // print the path, and then the list of files.  records carry their full paths.
+                try {
+                    if ((options & (NDJSON | BINARY)) == 0) {
+                        if (index > 0) out.newline();
+                        if (numItems > 0) out.append(l.list.path).append(':').newline();
+                    }
+                    index++;
+                    l.list.format(out);
+                } catch (Exception e) { report(e); }
+            }
+        } finally { pool.shutdownNow(); }
+    }
+
+      // -n K: rank every entry of the items, and with -R of everything below them, and print
+      // the first k as one list with their full paths.  directories are read one at a time,
+      // depth first, and each list is dropped once its entries have been offered to the heap.
+    private static void top(OutputBuffer out, List<File> items, String workingDir, int options, int k) {
+        TopK top = new TopK(k, options);
+        Deque<String> dirs = new ArrayDeque<String>();
+        FileList files = FileList.empty(options & ~RECURSE);
+        if (items.isEmpty()) dirs.push(workingDir);
         for (File item : items) {
             try {
-                if (item.isDirectory()) {
-                    numItems++;
-                    subdirItems.add(FileList.of(item.getCanonicalPath(), options));
-                } else localItems.add(item);  // if its not a directory is a globbed file - add to localItems
-            } catch (Exception e) { System.out.println(e.getMessage()); }
+                if (item.isDirectory()) dirs.addLast(item.getCanonicalPath());
+                else files.add(item);
+            } catch (Exception e) { report(e); }
         }
-         
-          // if recursing, add subdirs from the localItems first
-        for (String subDir : localItems.subDirectories()) {
-            try { 
-                numItems++;
-                subdirItems.add(FileList.of(subDir, options));
-            } catch (Exception e) { System.out.println(e.getMessage()); }
+        for (FileEntry e : files.files) top.offer(e);
+        String dir;
+        while ((dir = dirs.pollFirst()) != null) {
+            FileList fl;
+            try { fl = FileList.of(dir, options); }
+            catch (Exception e) { report(e); continue; }
+            for (FileEntry e : fl.files) top.offer(e);
+            for (String subDir : fl.subDirectories()) dirs.push(subDir);
         }
-        
-          // first print any items in the current working dir i.e. result of globbing or no parameters at all
-        if (!localItems.isEmpty()) {
-            try {
-                index++;
-                List<String> names = localItems.format();
-                if ((localItems.activeOptions & REVERSE) == REVERSE) Collections.reverse(names);
-                for (String name : names) System.out.println(name);
-            } catch (Exception e) { System.out.println(e.getMessage()); }
+        FileList ranked = FileList.empty((options | CANONICAL | NOORDER) & ~RECURSE);
+        try {
+            for (FileEntry e : top.ranked()) ranked.add(e);
+            ranked.format(out);
+        } catch (Exception e) { report(e); }
+    }
+
+      // one directory read by a worker: the list, or why it couldn't be read, and the errors
+      // with single entries, all to be reported when main gets to it
+    private static final class Listing {
+        FileList list;
+        Exception failure;
+        final List<Exception> errors = new ArrayList<Exception>();
+
+        static Listing read(String path, int options) {
+            Listing l = new Listing();
+            try { l.list = FileList.read(path, l.errors, options); }
+            catch (Exception e) { l.failure = e; }
+            return l;
         }
 
-          // print the contents of any explicitly passed folders
-          // use old-fashioned for loop because we might be adding to the list
-          // if we are recursing subdirs
-        for (int i = 0; i < subdirItems.size(); i++) {
-            FileList fl = subdirItems.get(i);
+        static Listing failed(Exception e) {
+            Listing l = new Listing();
+            l.failure = e;
+            return l;
+        }
 
-              // add subdirectories if we're recursing
-            for (String subDir : fl.subDirectories()) {
-                try {
-                    numItems++;
-                    subdirItems.add(FileList.of(subDir, options));
-                } catch (Exception e) { System.out.println(e.getMessage()); }
+        static Listing await(Future<Listing> f) {
+            try { return f.get(); }
+            catch (ExecutionException e) { return failed(e.getCause() instanceof Exception ? (Exception) e.getCause() : e); }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return failed(e);
             }
+        }
 
-              // print the path, and then the list of files.
-            try {
-                List<String> names = fl.format();
-                if (index > 0) System.out.println();
-                index++;
-                if (numItems > 0) System.out.println(fl.path + ":");
-                if ((fl.activeOptions & REVERSE) == REVERSE) Collections.reverse(names);
-                for (String name : names) System.out.println(name);
-            } catch (Exception e) { System.out.println(e.getMessage()); }
+          // print the errors; true if there is a list to print
+        boolean report() {
+            for (Exception e : errors) FileList.report(e);
+            if (failure != null) FileList.report(failure);
+            return list != null;
         }
     }
 
+      // a directory queued by -R: its path, and its read once that has been started
+    private static final class Pending {
+        final String path;
+        Future<Listing> read;
+
+        Pending(String path, Future<Listing> read) {
+            this.path = path;
+            this.read = read;
+        }
+
+        void start(ExecutorService pool, int options) {
+            if (read == null) read = pool.submit(() -> Listing.read(path, options));
+        }
+    }
     
     // constants that represent options, to be bitmasked together to form one option parameter
     public static final int ALL      = 1;     // show hidden files except . and ..
     public static final int EXTENDED = 2;     // show extended listing data
     public static final int CANONICAL= 4;     // display path in canonical (absolute) format
     public static final int BYTIME   = 8;     // primary sort = date modified, secondary sort filename
-    public static final int BYSIZE   = 16;    // primary sort = file size, secondary sort filename
+    public static final int BYSIZE   = 16;    // primary sort = file size, secondary sort filename (or date, with BYTIME)
     public static final int REVERSE  = 32;    // reverse order of primary sort
     public static final int RECURSE  = 64;    // follow subdirectories
     public static final int USECOLOR = 128;   // use ANSI escape sequences to color code file types
     public static final int HELPME   = 256;   // show help message
-    public static final int NOORDER  = 512;   // use linked list instead of tree 
+    public static final int NOORDER  = 512;   // keep entries in the order they were added 
+    public static final int NDJSON   = 1024;  // write Records, one JSON object per line
+    public static final int BINARY   = 2048;  // write Records in their binary format
+
+      // -R reads ahead: up to LOOKAHEAD queued directories, on READERS threads
+    private static final int LOOKAHEAD = 64;
+    private static final int READERS   = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+    private static volatile int concurrency = 1;
+    private static volatile Semaphore fetchPermits = new Semaphore(1);
 
     private static final String ANSI_RESET     = "\033[0;0m";
     private static final String ANSI_DIRECTORY = "\033[34m";    // directory = blue
@@ -233,6 +517,10 @@ public class FileList {
     private static final String ANSI_NOACCESS  = "\033[9m";     // no access = strike-thru
     private static final String ANSI_HIDDEN    = "\033[7m";     // hidden = inverted
  
+      // like ls: time of day for this year's files, the year for older ones
+    private static final DateTimeFormatter RECENT = DateTimeFormatter.ofPattern("MMM dd HH:mm").withZone(ZoneId.systemDefault());
+    private static final DateTimeFormatter OLDER  = DateTimeFormatter.ofPattern("MMM dd  yyyy").withZone(ZoneId.systemDefault());
+
     private static final Map<Character, Integer> OPTIONKEY = 
         Collections.unmodifiableMap(new HashMap<Character, Integer>() {{
             put('A', ALL);
@@ -257,6 +545,7 @@ public class FileList {
             put('r', "reverse order while sorting");
             put('C', "colorize the output");
             put('h', "show help message");
+            put('n', "with -S or -t, list only the first K entries of all (-n K)");
         }}); 
 
     private int activeOptions;
@@ -265,14 +554,22 @@ public class FileList {
     private int sizeLength;
     private String formatString; 
     private String path;
-    private Collection<File> files;
+    private List<FileEntry> files;
+    private boolean sorted;
+    private int[] sortKeys;
     private long thisYear;
+    private Map<Long, String> dates;      // minute of the epoch -> formatted date
+    private Canonical lastDir = new Canonical(null, null);    // see canonical()
     private List<String> subDirs;
 
     private static void displayHelp() {
         System.out.println("Usage: FileList [OPTION]... [FILE]...");
         System.out.println("List information about the FILEs (the current directory by default).");
         System.out.println("Sort entries alphabetically if none of -tSr is specified.");
+        System.out.println("With both -S and -t, sort by size, then by time.");
+        System.out.println("With -stats, print counters and timings of the run to stderr when done.");
+        System.out.println("With --concurrency=N, read the attributes of up to N entries at once (for network file systems).");
+        System.out.println("With --ndjson or --binary, write one record per entry for other programs, see Records.");
         System.out.println();
         FileList.displayOptions();
     }
@@ -289,24 +586,10 @@ public class FileList {
         this.ownerLength = 0;
         this.groupLength = 0;
         this.sizeLength  = 0;
-        Comparator<File> compareBy;
-          // depending on the sort order specified, we use a different comparator 
-          // to build the tree 
-        switch ( options & (BYTIME | BYSIZE) ) {
-            case BYTIME:
-                compareBy = new FileList.compareByTime();
-                break;
-            case BYSIZE:
-                compareBy = new FileList.compareBySize();
-                break;
-            case BYTIME | BYSIZE:
-                throw new RuntimeException("Can only sort by date or size, not both");
-            default:
-                compareBy = new FileList.compareByName();
-                break;
-        }
-        if ((options & NOORDER) == NOORDER) files = new LinkedList<File>();  
-        else files = new TreeSet<File>(compareBy);
+        sortKeys = sortKeys(options);
+          // entries are collected unordered and sorted once, the first time they are read
+        files = new ArrayList<FileEntry>();
+        sorted = (options & NOORDER) == NOORDER;
 
           // get the epoch time of the start of the current year, so that the extended
           // format output can use MMM-DD HH:MM for files modified in the current year, 
@@ -315,74 +598,201 @@ public class FileList {
         ZoneId zone = ZoneId.systemDefault();    
         thisYear = 1000L * d.atStartOfDay(zone).toEpochSecond();
         subDirs = new ArrayList<String>();
+        dates = new HashMap<Long, String>();
     }
     
+    private static FileEntry stat(File f) throws IOException {
+        try { return FileEntry.of(f); }
+        catch (NoSuchFileException x) { throw new FileNotFoundException("cannot access " + f.getCanonicalPath() + ": No such file or directory"); }
+    }
+
+      // stat every entry that add() would keep, up to concurrency at a time.  entries[n] is
+      // left null for the ones that are skipped, and failures[n] is set for the ones that fail.
+    private void fetch(File[] files, FileEntry[] entries, Exception[] failures) throws IOException {
+        Semaphore permits = fetchPermits;
+        CountDownLatch done = new CountDownLatch(files.length);
+        try {
+            for (int n = 0; n < files.length; n++) {
+                File f = files[n];
+                if (isSkippedHidden(f.getName())) { done.countDown(); continue; }
+                int i = n;
+                permits.acquire();
+                Fetcher.EXECUTOR.execute(() -> {
+                    try { entries[i] = stat(f); }
+                    catch (Exception e) { failures[i] = e; }
+                    finally {
+                        permits.release();
+                        done.countDown();
+                    }
+                });
+            }
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while reading attributes");
+        }
+    }
+
+      // runs the attribute reads for fetch(): on virtual threads if the runtime has them
+      // (Java 21 and up), else on a pool of daemon threads that grows to the concurrency.
+      // either way the number in flight is capped by fetchPermits.
+    private static final class Fetcher {
+        static final ExecutorService EXECUTOR = create();
+
+        private static ExecutorService create() {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                return Executors.newCachedThreadPool(r -> {
+                    Thread t = new Thread(r, "FileList fetcher");
+                    t.setDaemon(true);
+                    return t;
+                });
+            }
+        }
+    }
+
+      // print an error and count it
+    private static void report(Exception e) {
+        System.out.println(e.getMessage());
+        Metrics.error(e);
+    }
+
+      // depending on the sort order specified, we pick the keys FileSort extracts
+      // before sorting.  the file name is always the last key.
+    static int[] sortKeys(int options) {
+        switch ( options & (BYTIME | BYSIZE) ) {
+            case BYTIME:          return new int[] { FileSort.BYTIME };
+            case BYSIZE:          return new int[] { FileSort.BYSIZE };
+            case BYTIME | BYSIZE: return new int[] { FileSort.BYSIZE, FileSort.BYTIME };
+            default:              return new int[0];
+        }
+    }
+
+    private boolean isSkippedHidden(String name) {
+        return ((activeOptions & ALL) != ALL) && (name.charAt(0) == '.');
+    }
+
+    private List<FileEntry> ordered() {
+        if (!sorted) {
+            long t = Metrics.start();
+            files = FileSort.sort(files, sortKeys);
+            sorted = true;
+            Metrics.stop(Metrics.SORT, t);
+        }
+        return files;
+    }
+
     private Iterable<String> subDirectories() {
         return subDirs;
     }
 
-    private String formatExtended(File f) throws IOException {
+    private String formatExtended(FileEntry e) throws IOException {
        String output = "";
-       PosixFileAttributes attrs = Files.readAttributes(f.toPath(), PosixFileAttributes.class); 
-
-       Set<PosixFilePermission> permissions = attrs.permissions();
-       SimpleDateFormat formatter;
-       if (f.lastModified() > thisYear)
-            formatter = new SimpleDateFormat("MMM dd HH:mm");
-       else formatter = new SimpleDateFormat("MMM dd  YYYY");
        output = String.format(formatString,
-           (f.isDirectory() ? "d" : "-") +
-           PosixFilePermissions.toString(permissions),
-           attrs.owner().getName(),
-           attrs.group().getName(),
-           attrs.size(),
-           formatter.format(f.lastModified()),
-           formatPlain(f)
+           (e.isDirectory() ? "d" : "-") +
+           e.permissions(),
+           e.owner(),
+           e.group(),
+           e.size(),
+           date(e.lastModified()),
+           formatPlain(e)
            );
        return output; 
     }
 
-    private String formatPlain(File f) throws IOException {
-        String output = "";
-        output = ((activeOptions & CANONICAL) == CANONICAL) ? f.getCanonicalPath() : f.getName();
-        if (f.isDirectory()) output = output + File.separator;
-        if ((activeOptions & USECOLOR) == USECOLOR) {
-              // use ansi control codes, this should work in anything from vt100 thru windows console
-            if (f.isHidden()) output = ANSI_HIDDEN + output;
-            if (!f.canRead()) output = ANSI_NOACCESS + output;
-            if (f.isDirectory()) output = ANSI_DIRECTORY + output;
-            if (f.canExecute()) output = ANSI_EXECUTE + output;
-            if (!f.canWrite()) output = ANSI_READONLY + output;
-            output = output + ANSI_RESET;
-        } 
-        return output;
+    private void write(FileEntry e, OutputBuffer out) throws IOException {
+        if ((activeOptions & NDJSON) == NDJSON) { Records.writeJson(e, out); return; }
+        if ((activeOptions & BINARY) == BINARY) { Records.writeBinary(e, out); return; }
+        if ((activeOptions & EXTENDED) == EXTENDED) writeExtended(e, out);
+        writePlain(e, out);
+        out.newline();
     }
 
-    private class compareBySize implements Comparator<File> {
-        public int compare(File a, File b) {
-            long sizea = a.length();
-            long sizeb = b.length();
-            if (sizea == sizeb)
-                return a.getName().compareTo(b.getName());
-            return (int)(sizeb - sizea);  // this is backwards, because size sort is biggest first
+      // the same fields as formatExtended, up to and including the space before the name
+    private void writeExtended(FileEntry e, OutputBuffer out) throws IOException {
+        int mode = e.mode();
+        out.append(e.isDirectory() ? 'd' : '-');
+        for (int n = 8; n >= 0; n--)
+            out.append((mode != -1 && (mode & (1 << n)) != 0) ? "xwr".charAt(n % 3) : '-');
+        String owner = e.owner();
+        String group = e.group();
+        long size = e.size();
+        out.append(". ").append(owner).pad(ownerLength - owner.length()).append(' ');
+        out.append(group).pad(groupLength - group.length()).append(' ');
+        out.pad(sizeLength - (size < 0 ? OutputBuffer.digits(-size) + 1 : OutputBuffer.digits(size))).append(size).append(' ');
+        out.append(date(e.lastModified())).append(' ');
+    }
+
+    private void writePlain(FileEntry e, OutputBuffer out) throws IOException {
+        boolean color = (activeOptions & USECOLOR) == USECOLOR;
+        if (color) {
+              // same codes in the same order as formatPlain
+            if (!e.canWrite()) out.append(ANSI_READONLY);
+            if (e.canExecute()) out.append(ANSI_EXECUTE);
+            if (e.isDirectory()) out.append(ANSI_DIRECTORY);
+            if (!e.canRead()) out.append(ANSI_NOACCESS);
+            if (e.isHidden()) out.append(ANSI_HIDDEN);
         }
+        out.append(((activeOptions & CANONICAL) == CANONICAL) ? canonical(e) : e.name());
+        if (e.isDirectory()) out.append(File.separator);
+        if (color) out.append(ANSI_RESET);
     }
 
-    private class compareByTime implements Comparator<File> {
-        public int compare(File a, File b) {
-            long datea = a.lastModified();
-            long dateb = b.lastModified();
-            if (datea == dateb)
-                return a.getName().compareTo(b.getName());
-            return (int)(datea - dateb);
+      // dates are only shown to the minute, so each distinct minute is formatted once.
+      // the cache is dropped when it gets large, e.g. for a listing with spread-out times.
+    private String date(long millis) {
+        long minute = Math.floorDiv(millis, 60000L);
+        String s = dates.get(minute);
+        if (s == null) {
+            if (dates.size() >= 4096) dates.clear();
+            Instant t = Instant.ofEpochMilli(millis);
+            s = ((millis > thisYear) ? RECENT : OLDER).format(t);
+            dates.put(minute, s);
         }
+        return s;
+    }
+
+      // the path -c prints for e.  a link is resolved to its target, as getCanonicalPath does.
+      // anything else is its name in the canonical path of its directory, which is looked up
+      // once for a run of entries from the same directory instead of once per line.  entries
+      // that weren't stat'ed may be links, so they are resolved one by one.
+    private String canonical(FileEntry e) throws IOException {
+        Path dir = e.path().getParent();
+        String name = e.name();
+        if (dir == null || !e.hasAttributes() || e.isSymbolicLink() || name.equals(".") || name.equals(".."))
+            return e.file().getCanonicalPath();
+        Canonical c = lastDir;
+        if (!dir.equals(c.dir)) lastDir = c = new Canonical(dir, dir.toFile().getCanonicalPath());
+        return c.path.endsWith(File.separator) ? c.path + name : c.path + File.separator + name;
     }
 
-    private class compareByName implements Comparator<File> {
-        public int compare(File a, File b) {
-            return a.getName().compareTo(b.getName());
+      // a directory and its canonical path, replaced as a whole so that threads formatting
+      // into the same list never see one without the other
+    private static final class Canonical {
+        final Path dir;
+        final String path;
+
+        Canonical(Path dir, String path) {
+            this.dir = dir;
+            this.path = path;
         }
     }
+
+    private String formatPlain(FileEntry e) throws IOException {
+        String output = "";
+        output = ((activeOptions & CANONICAL) == CANONICAL) ? canonical(e) : e.name();
+        if (e.isDirectory()) output = output + File.separator;
+        if ((activeOptions & USECOLOR) == USECOLOR) {
+              // use ansi control codes, this should work in anything from vt100 thru windows console
+            if (e.isHidden()) output = ANSI_HIDDEN + output;
+            if (!e.canRead()) output = ANSI_NOACCESS + output;
+            if (e.isDirectory()) output = ANSI_DIRECTORY + output;
+            if (e.canExecute()) output = ANSI_EXECUTE + output;
+            if (!e.canWrite()) output = ANSI_READONLY + output;
+            output = output + ANSI_RESET;
+        } 
+        return output;
+    }
     
 }
-
@@ -0,0 +1,89 @@
+package cli;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+  // sorting stage for FileList.  instead of a comparator that asks each entry for its size or
+  // time on every compare, each key is pulled out once into an array of longs and replaced by
+  // its rank, the position of its value in the sorted array.  ranks are less than the number of
+  // entries, so two of them fit in a long: the ranks of the keys are folded into one from the
+  // last to the first, and that one is packed with the entry's index and sorted as a long[].
+  // size and time can be combined in either order, with the file name as the final tie-break,
+  // e.g. size, then time, then name.  entries that tie on all of them keep the order they had.
+class FileSort {
+
+    static final int BYSIZE = 1;    // largest first
+    static final int BYTIME = 2;    // newest first
+
+      // above this many entries the arrays are sorted with Arrays.parallelSort
+    static final int PARALLEL_THRESHOLD = 1 << 13;
+
+    static List<FileEntry> sort(List<FileEntry> entries, int ... keys) {
+        int n = entries.size();
+        String[] names = new String[n];
+        for (int i = 0; i < n; i++) names[i] = entries.get(i).name();
+        int[] rank = rank(names);
+        long[] values = new long[n];
+        for (int k = keys.length - 1; k >= 0; k--) {
+            for (int i = 0; i < n; i++) values[i] = key(entries.get(i), keys, k);
+            int[] r = rank(values);
+            for (int i = 0; i < n; i++) values[i] = (long) r[i] << 32 | rank[i];
+            rank = rank(values);
+        }
+        for (int i = 0; i < n; i++) values[i] = (long) rank[i] << 32 | i;
+        sort(values);
+
+        List<FileEntry> sorted = new ArrayList<FileEntry>(n);
+        for (long v : values) sorted.add(entries.get((int) v));
+        return sorted;
+    }
+
+      // the same order as sort(), as a comparator on entries, for when they aren't all
+      // at hand at once, see TopK
+    static Comparator<FileEntry> order(int ... keys) {
+        return new Comparator<FileEntry>() {
+            public int compare(FileEntry a, FileEntry b) {
+                for (int n = 0; n < 2; n++) {
+                    long x = key(a, keys, n), y = key(b, keys, n);
+                    if (x != y) return x < y ? -1 : 1;
+                }
+                return a.name().compareTo(b.name());
+            }
+        };
+    }
+
+      // keys are negated so that every column sorts ascending
+    private static long key(FileEntry e, int[] keys, int n) {
+        if (n >= keys.length) return 0;
+        switch (keys[n]) {
+            case BYSIZE: return -e.size();
+            case BYTIME: return -e.lastModified();
+            default:     return 0;
+        }
+    }
+
+      // for each value, where it is in the sorted values: equal values get the same rank
+    private static int[] rank(long[] values) {
+        long[] sorted = values.clone();
+        sort(sorted);
+        int[] rank = new int[values.length];
+        for (int i = 0; i < values.length; i++) rank[i] = Arrays.binarySearch(sorted, values[i]);
+        return rank;
+    }
+
+    private static int[] rank(String[] names) {
+        String[] sorted = names.clone();
+        if (sorted.length >= PARALLEL_THRESHOLD) Arrays.parallelSort(sorted);
+        else Arrays.sort(sorted);
+        int[] rank = new int[names.length];
+        for (int i = 0; i < names.length; i++) rank[i] = Arrays.binarySearch(sorted, names[i]);
+        return rank;
+    }
+
+    private static void sort(long[] values) {
+        if (values.length >= PARALLEL_THRESHOLD) Arrays.parallelSort(values);
+        else Arrays.sort(values);
+    }
+}
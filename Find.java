@@ -3,129 +3,473 @@ import static java.nio.file.FileVisitResult.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
 import java.io.*;
 
 public class Find {
     public static FileList in(String path, String pattern, String prune) throws FileNotFoundException, SecurityException {
+        return in(path, pattern, prune, 1);
+    }
+
+      // parallelism > 1 walks the tree on a ForkJoinPool of that many workers, one subtask
+      // per directory, and with a content test one per file read, see Visitor.  the result is
+      // the same set of files, but in no particular order.
+    public static FileList in(String path, String pattern, String prune, int parallelism) throws FileNotFoundException, SecurityException {
         int options = FileList.CANONICAL | FileList.NOORDER;
-        boolean usePattern = false;
-        boolean usePruning = false;
-        boolean isUnreadable = false;
-        Queue<Path> dirQ = new LinkedList<Path>();
-        Path dir = Paths.get(path);
         FileList fl = FileList.empty(options);
-        if (!Files.isDirectory(dir)) {
-            if (Files.isReadable(dir)) {
-                try { fl.add(dir.toFile()); }
-                catch (Exception e) {} //System.out.println(e.getMessage()); }
-            } else System.out.println("Find: Error: cannot read " + dir + ": permission denied");
-            return fl; 
-        }
-        FileSystem fs = FileSystems.getDefault();
-        PathMatcher patternMatch = null;
-        PathMatcher pruningMatch = null;
-        if (!pattern.equals("")) {
-            usePattern = true;
-            patternMatch = fs.getPathMatcher("glob:**/" + pattern); 
+        in(path, pattern, prune, parallelism, entry -> {
+            synchronized (fl) {
+                try { fl.add(entry); }
+                catch (Exception e) { Metrics.error(e); }
+            }
+        });
+        return fl;
+    }
+
+      // streaming version: each match is handed to sink as soon as it is found, so nothing
+      // is held except the directories still waiting to be read.  when parallelism > 1
+      // the sink is called from the worker threads and must be thread-safe.
+    public static void in(String path, String pattern, String prune, int parallelism, Consumer<FileEntry> sink) {
+        in(path, matcher(pattern), matcher(prune), parallelism, sink);
+    }
+
+      // the same, with any number of -name and -prune globs compiled into NameMatchers.
+      // a null matcher means no -name (everything matches) or no -prune.
+    public static void in(String path, NameMatcher patternMatch, NameMatcher pruningMatch, int parallelism, Consumer<FileEntry> sink) {
+        in(path, patternMatch == null ? null : FindExpr.name(patternMatch), pruningMatch, parallelism, 0, sink);
+    }
+
+      // the general form: entries are reported if expr accepts them, or all of them if expr is null.
+      // flags is 0 or LEAF.
+    public static void in(String path, FindExpr expr, NameMatcher pruningMatch, int parallelism, int flags, Consumer<FileEntry> sink) {
+        Queue<FileEntry> dirQ = new ArrayDeque<FileEntry>();
+        FileEntry dir;
+        try { dir = FileEntry.of(Paths.get(path)); }
+        catch (IOException e) { dir = null; }
+        if (dir == null || !dir.isDirectory()) {
+            if (dir != null && dir.canRead()) sink.accept(dir);
+            else System.out.println("Find: Error: cannot read " + path + ": permission denied");
+            return;
         }
-        if (!prune.equals("")) {
-            usePruning = true;
-            pruningMatch = fs.getPathMatcher("glob:**/" + prune);
+        boolean parallel = parallelism > 1;
+        Visitor visitor = new Visitor(expr, pruningMatch, flags, parallel && expr != null && expr.cost() == FindExpr.CONTENT, sink);
+        if (parallel) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try { pool.invoke(new Walker(dir, visitor)); }
+            finally { pool.shutdown(); }
+            return;
         }
         dirQ.add(dir);
-        while ((dir = dirQ.poll()) != null) {
-            isUnreadable = false;
-            if (usePruning && pruningMatch.matches(dir)) continue;
-            if (!Files.isReadable(dir)) {
+        while ((dir = dirQ.poll()) != null) visitor.visit(dir, dirQ::add);
+    } // in()
+
+      // the results of a walk, in an EntryTable instead of a FileList, for result sets too big
+      // to keep as objects.  if options (FileList's) sort by size or time, every result is
+      // stat'ed first, otherwise entries the walk didn't stat are stored without attributes.
+    public static EntryTable collect(String path, FindExpr expr, NameMatcher pruningMatch, int parallelism, int flags, int options) {
+        EntryTable table = new EntryTable();
+        boolean attributes = (options & (FileList.BYSIZE | FileList.BYTIME)) != 0;
+        in(path, expr, pruningMatch, parallelism, flags, e -> {
+            try { table.add(attributes ? e.full() : e); }
+            catch (IOException x) { Metrics.error(x); }    // gone since it was listed
+        });
+        return table;
+    }
+
+    static NameMatcher matcher(String pattern) {
+        return pattern.equals("") ? null : NameMatcher.of(pattern);
+    }
+
+      // the leaf optimization, off unless asked for: once a directory's subdirectories have all
+      // been seen, the rest of its entries aren't stat'ed.  Java doesn't tell a link from a file
+      // without a stat, so a link to a directory among them is reported as a file and not
+      // descended.  NOLEAF turns it off again.
+    public static final int NOLEAF = 1;
+    public static final int LEAF   = 2;
+
+      // reads one directory: reports it and its entries as the rules say, and hands each
+      // subdirectory to descend.  shared by the queue loop and the parallel Walker.
+      // forkContent (parallel walks with a content test): the files that pass the cheap tests,
+      // see FindExpr.possible, are read by one ContentTest each, forked together once the
+      // directory has been listed, so a directory of many files is read by all the workers.
+    private static class Visitor {
+        private final FindExpr expr;
+        private final NameMatcher pruningMatch;
+        private final int flags;
+        private final boolean forkContent;
+        private final Consumer<FileEntry> sink;
+
+        Visitor(FindExpr expr, NameMatcher pruningMatch, int flags, boolean forkContent, Consumer<FileEntry> sink) {
+            this.expr = expr;
+            this.pruningMatch = pruningMatch;
+            this.flags = flags;
+            this.forkContent = forkContent;
+            this.sink = sink;
+        }
+
+        void visit(FileEntry dir, Consumer<FileEntry> descend) {
+            boolean isUnreadable = false;
+            if (pruningMatch != null && pruningMatch.matches(dir.name(), dir.path())) {
+                Metrics.increment(Metrics.PRUNED);
+                return;
+            }
+            if (!dir.canRead()) {
                 System.out.println("Find: Error: cannot read " + dir + ": permission denied");
-                //continue;
+                Metrics.error("PermissionDenied");
                 isUnreadable = true;
             }
-            if (!usePattern) try {
-                if (!isUnreadable) fl.add(dir.toFile());
-            } catch (Exception e) { } //System.out.println(e.getMessage()); }
-            try {
-                for (Path p : Files.newDirectoryStream(dir)) {
-                    if (Files.isDirectory(p)) { 
-                        if (usePattern && Files.isReadable(p) && patternMatch.matches(p)) fl.add(p.toFile());
-                        dirQ.add(p);
-                    } else {
-                        if (usePattern && !patternMatch.matches(p))
-                            {} // do nothing
-                        else if (!isUnreadable) fl.add(p.toFile());
+            if (expr == null && !isUnreadable) sink.accept(dir);
+            Metrics.increment(Metrics.DIRECTORIES);
+            Object event = Metrics.directoryStart();
+            int entries = 0;
+            int errors = 0;
+            List<ContentTest> reads = forkContent ? new ArrayList<ContentTest>() : null;
+            List<FileEntry> cached = TreeCache.lookup(dir.path());
+            if (cached != null) {
+                for (FileEntry e : cached) {
+                    entries++;
+                    if (entry(new FindExpr.Candidate(e), isUnreadable, descend, reads) < 0) errors++;
+                }
+            } else {
+                  // a directory's link count is 2 plus its number of subdirectories.  once that many
+                  // have been seen the remaining entries can't be directories, and they are only
+                  // stat'ed if the expression asks for it.  links to directories aren't counted, and
+                  // aren't told apart from files once the count is reached, hence only with LEAF.
+                int subdirs = ((flags & (LEAF | NOLEAF)) == LEAF && dir.links() >= 2) ? dir.links() - 2 : -1;
+                try (DirectoryStream<Path> contents = Files.newDirectoryStream(dir.path())) {
+                    Iterator<Path> it = contents.iterator();
+                    for (long t = Metrics.start(); it.hasNext(); t = Metrics.start()) {
+                        Path p = it.next();
+                        Metrics.stop(Metrics.READ, t);
+                        entries++;
+                        FindExpr.Candidate c = new FindExpr.Candidate(p, subdirs == 0);
+                        int type = entry(c, isUnreadable, descend, reads);
+                        if (type > 0 && !c.entry().isSymbolicLink()) subdirs--;
+                        if (type < 0) errors++;
                     }
+                } catch (Exception e) {
+                      // the rest of this directory, and whatever is below it, is skipped
+                    Metrics.error(e);
+                    errors++;
+                }
+            }
+            if (reads != null) {
+                ForkJoinTask.invokeAll(reads);
+                for (ContentTest t : reads) if (t.join() < 0) errors++;
+            }
+            Metrics.add(Metrics.ENTRIES, entries);
+            Metrics.directoryRead(event, dir.toString(), entries, errors);
+        }
+
+          // returns 1 if c is a directory, 0 if it isn't, -1 if it couldn't be read.  with reads,
+          // a file that may match is added to it instead of being tested.
+        private int entry(FindExpr.Candidate c, boolean isUnreadable, Consumer<FileEntry> descend, List<ContentTest> reads) {
+            try {
+                if (c.isDirectory()) { 
+                    if (expr != null && c.entry().canRead() && expr.test(c)) sink.accept(c.entry());
+                    descend.accept(c.entry());
+                    return 1;
+                } else if (reads != null) {
+                    if (!isUnreadable && expr.possible(c)) reads.add(new ContentTest(c, this));
+                } else {
+                    if (expr != null && !expr.test(c))
+                        {} // do nothing
+                    else if (!isUnreadable) sink.accept(c.result());
                 }
-            } catch (Exception e) { } // System.out.println(e.getMessage()); }
-            
+            } catch (IOException e) {     // vanished, or a dangling link
+                Metrics.error(e);
+                return -1;
+            }
+            return 0;
         }
-        return fl;
-    } // in()
+    } // Visitor
 
-    private enum Token { NOTHING, VALUE, OPT_NAME, OPT_PRUNE, OPT_UNKNOWN }
+      // the full test of one file that may match, in a parallel walk: see Visitor.  the result
+      // is entry()'s, so -1 if the file couldn't be read.
+    private static class ContentTest extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+        private final FindExpr.Candidate c;
+        private final Visitor visitor;
+
+        ContentTest(FindExpr.Candidate c, Visitor visitor) {
+            this.c = c;
+            this.visitor = visitor;
+        }
+
+        protected Integer compute() {
+            return visitor.entry(c, false, null, null);
+        }
+    } // ContentTest
+
+      // one directory of a parallel walk.  the Visitor does the work, but each subdirectory
+      // becomes a forked subtask instead of going on the queue.
+    private static class Walker extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final FileEntry dir;
+        private final Visitor visitor;
+
+        Walker(FileEntry dir, Visitor visitor) {
+            this.dir = dir;
+            this.visitor = visitor;
+        }
+
+        protected void compute() {
+            List<Walker> subtasks = new ArrayList<Walker>();
+            visitor.visit(dir, e -> {
+                Walker w = new Walker(e, visitor);
+                w.fork();
+                subtasks.add(w);
+            });
+            for (Walker w : subtasks) w.join();
+        }
+    } // Walker
 
     public static void main(String ... args) {
+          // results and error messages share one block buffer, see FileList.main.  results are
+          // appended under the buffer's monitor, which its write() also takes when println hands
+          // it a line, so lines from parallel walkers never interleave.  (the PrintStream's own
+          // lock is no help: since JDK 19 println doesn't take the stream's monitor.)
+        OutputBuffer out = new OutputBuffer(new FileOutputStream(FileDescriptor.out));
+        System.setOut(new PrintStream(out, false));
+          // except with records, which are for programs: then error messages go to stderr
+        PrintStream stdout = System.out;
+        if (Arrays.asList(args).contains("-ndjson") || Arrays.asList(args).contains("-binary")) System.setOut(System.err);
+        try { find(out, args); }
+        finally {
+            System.out.flush();
+            stdout.flush();
+        }
+        Metrics m = Metrics.current();
+        if (m != null) for (String line : m.summary()) System.err.println("Find: Stats: " + line);
+    }
+
+      // results are appended to out holding its monitor, see main
+    private static void find(OutputBuffer out, String ... args) {
         String errorMsg = "";
         Queue<String> paths = new LinkedList<String>();
-        String pattern = "";
-        String prune   = "";
+        List<String> expression = new ArrayList<String>();
+        List<String> prunes = new ArrayList<String>();
+        int parallelism = 0;    // not given
+        int flags = 0;
+        int top = 0;
+        int rank = 0;       // FileList.BYSIZE and/or BYTIME, for -n
+        boolean duplicates = false;
+        int records = 0;    // FileList.NDJSON or BINARY
+        String db = "";
+        String updatedb = "";
+        String snapshot = "";   // -snapshot FILE, written or (with -diff) saved
+        String diff = "";       // -diff OLD, against the live tree
+        String[] compare = null;    // -compare OLD NEW, two snapshots
         String workingDir = System.getProperty("user.dir");
-        Token last = Token.NOTHING;
-        for (String arg : args) {
-            if (arg.charAt(0) == '-') {
-                switch (last) {
-                    case OPT_NAME:
-                        errorMsg = errorMsg + "Find: Error: missing argument to -name\n";
-                        break;
-                    case OPT_PRUNE:
-                        errorMsg = errorMsg + "Find: Error: missing argument to -prune\n";
-                        break;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.isEmpty()) continue;
+              // the expression is collected as is and parsed by FindExpr once all args are in
+            if (FindExpr.isExpression(arg)) {
+                expression.add(arg);
+                if (FindExpr.takesArgument(arg)) {
+                    if (i + 1 < args.length) expression.add(args[++i]);
+                    else errorMsg = errorMsg + "Find: Error: missing argument to " + arg + "\n";
                 }
-                switch (arg) {
-                    case "-name":
-                        last = Token.OPT_NAME;  
+                continue;
+            }
+            switch (arg) {
+                case "-prune":
+                case "-n":
+                case "-P":
+                case "-db":
+                case "-updatedb":
+                case "-snapshot":
+                case "-diff":
+                    if (i + 1 == args.length) {
+                        errorMsg = errorMsg + "Find: Error: missing argument to " + arg + "\n";
                         break;
-                    case "-prune":
-                        last = Token.OPT_PRUNE;
+                    }
+                    String value = args[++i];
+                    if (arg.equals("-prune")) prunes.add(value);
+                    else if (arg.equals("-db")) db = value;
+                    else if (arg.equals("-updatedb")) updatedb = value;
+                    else if (arg.equals("-snapshot")) snapshot = value;
+                    else if (arg.equals("-diff")) diff = value;
+                    else if (arg.equals("-n")) {
+                        try { top = Integer.parseInt(value); }
+                        catch (NumberFormatException e) { top = 0; }
+                        if (top < 1) errorMsg = errorMsg + "Find: Error: invalid argument '" + value + "' to -n\n";
+                    } else {
+                        try { parallelism = Integer.parseInt(value); }
+                        catch (NumberFormatException e) { parallelism = 0; }
+                        if (parallelism < 1) errorMsg = errorMsg + "Find: Error: invalid argument '" + value + "' to -P\n";
+                    }
+                    break;
+                case "-compare":
+                    if (i + 2 >= args.length) {
+                        errorMsg = errorMsg + "Find: Error: -compare needs two snapshots\n";
+                        i = args.length;
                         break;
-                    default:
-                        last = Token.OPT_UNKNOWN;
+                    }
+                    compare = new String[] { args[i + 1], args[i + 2] };
+                    i += 2;
+                    break;
+                case "-leaf":       // skip the stat of entries after the last subdirectory, see LEAF
+                    flags = flags | LEAF;
+                    break;
+                case "-noleaf":
+                    flags = flags | NOLEAF;
+                    break;
+                case "-S":          // with -n, rank by size
+                    rank = rank | FileList.BYSIZE;
+                    break;
+                case "-t":          // with -n, rank by modification time
+                    rank = rank | FileList.BYTIME;
+                    break;
+                case "-duplicates": // groups of files with the same contents, see Duplicates
+                    duplicates = true;
+                    break;
+                case "-ndjson":     // Records instead of paths, see main
+                case "-binary":
+                    int format = arg.equals("-ndjson") ? FileList.NDJSON : FileList.BINARY;
+                    if (records != 0 && records != format)
+                        errorMsg = errorMsg + "Find: Error: -ndjson and -binary can't be used together\n";
+                    records = format;
+                    break;
+                case "-stats":      // counters and timings to stderr when done, see main
+                case "--stats":     // as FileList used to spell it
+                    Metrics.enable();
+                    break;
+                default:
+                    if (arg.charAt(0) == '-')
                         errorMsg = errorMsg + "Find: Unknown option: '" + arg + "'\n";
-                }
-            } else {
-                switch(last) {
-                    case OPT_NAME:
-                        pattern = arg;
-                        last = Token.VALUE;
-                        break;
-                    case OPT_PRUNE:
-                        prune = arg;
-                        last = Token.VALUE;
-                        break;
-                    case OPT_UNKNOWN:
-                        errorMsg = errorMsg + "Find: Unexpected token '" + arg + "' skipped\n";
-                    default:
-                        if (arg.charAt(0) == '/')
-                            paths.add(arg);
-                        else paths.add(workingDir + File.separator + arg);
-                } 
+                    else if (arg.charAt(0) == '/')
+                        paths.add(arg);
+                    else paths.add(workingDir + File.separator + arg);
             }
         }
-        switch (last) {
-            case OPT_NAME:
-                errorMsg = errorMsg + "Find: Error: missing argument to -name\n";
-                break;
-            case OPT_PRUNE:
-                errorMsg = errorMsg + "Find: Error: missing argument to -prune\n";
-                break;
+        FindExpr expr = null;
+        if (!expression.isEmpty() && errorMsg.equals("")) {
+            try { expr = FindExpr.parse(expression); }
+            catch (IllegalArgumentException e) { errorMsg = errorMsg + "Find: Error: " + e.getMessage() + "\n"; }
         }
+          // reading files costs far more than walking, so content tests get a worker per CPU
+        if (parallelism == 0)
+            parallelism = (expr != null && expr.cost() == FindExpr.CONTENT) ? Runtime.getRuntime().availableProcessors() : 1;
+        if ((top > 0) != (rank != 0))
+            errorMsg = errorMsg + "Find: Error: -n needs -S or -t, and they only work with -n\n";
+        if (!db.equals("") && expr != null && expr.nameOnly() == null)
+            errorMsg = errorMsg + "Find: Error: -db only supports -name and -prune\n";
+        if (duplicates && (top > 0 || !db.equals("") || !updatedb.equals("")))
+            errorMsg = errorMsg + "Find: Error: -duplicates doesn't work with -n, -db or -updatedb\n";
+        boolean snapshots = !snapshot.equals("") || !diff.equals("") || compare != null;
+        if (snapshots && (expr != null || top > 0 || duplicates || records != 0 || !db.equals("") || !updatedb.equals("")))
+            errorMsg = errorMsg + "Find: Error: -snapshot, -diff and -compare only work with -prune\n";
+        else if (compare != null && (!snapshot.equals("") || !diff.equals("") || !paths.isEmpty()))
+            errorMsg = errorMsg + "Find: Error: -compare takes no paths, -snapshot or -diff\n";
+        else if (snapshots && paths.size() > 1)
+            errorMsg = errorMsg + "Find: Error: -snapshot and -diff take a single path\n";
+        if (records != 0 && (duplicates || !db.equals("")))
+            errorMsg = errorMsg + "Find: Error: -ndjson and -binary don't work with -duplicates or -db\n";
         
         if (errorMsg.equals("")) { 
             if (paths.isEmpty()) paths.add(workingDir);
-            for (String path : paths) {
+            NameMatcher prune = prunes.isEmpty() ? null : NameMatcher.of(prunes, Collections.<String>emptyList());
+            FileList printer = FileList.empty(FileList.CANONICAL | FileList.NOORDER | records);
+            boolean full = records != 0;
+            if (records == FileList.BINARY) {
+                try { Records.header(out); }
+                catch (IOException e) { System.out.println("Find: Error: " + e.toString()); }
+            }
+              // snapshots of a tree, and what changed between them, see Snapshot
+            if (snapshots) {
+                String root = paths.peek();
+                try { root = Paths.get(root).toRealPath().toString(); }
+                catch (IOException e) { root = Paths.get(root).normalize().toString(); }
+                try {
+                    if (compare != null) Snapshot.diff(Paths.get(compare[0]), Paths.get(compare[1]), out);
+                    else if (!diff.equals("")) Snapshot.diff(Paths.get(diff), root, prune, snapshot.equals("") ? null : Paths.get(snapshot), out);
+                    else Snapshot.write(root, prune, Paths.get(snapshot));
+                } catch (IOException e) { System.out.println("Find: Error: " + e.toString()); }
+                return;
+            }
+              // -updatedb writes (or refreshes) the index for the given paths instead of printing
+            if (!updatedb.equals("")) {
+                try { FindIndex.update(Paths.get(updatedb), paths); }
+                catch (IOException e) { System.out.println("Find: Error: " + e.toString() + ": " + updatedb); }
+                return;
+            }
+              // -db answers from the index, which already holds the canonical paths a walk would print
+            if (!db.equals("")) {
+                NameMatcher pattern = (expr == null) ? null : expr.nameOnly();
+                out.stream();
+                for (String path : paths) {
+                    String root;
+                    try { root = Paths.get(path).toRealPath().toString(); }
+                    catch (IOException e) { root = Paths.get(path).normalize().toString(); }
+                    try {
+                        FindIndex.query(Paths.get(db), root, pattern, prune, e -> {
+                            if (!printer.accepts(e)) return;
+                            synchronized (out) {
+                                try {
+                                    out.append(e.path().toString());
+                                    if (e.isDirectory()) out.append(File.separator);
+                                    out.newline();
+                                } catch (IOException x) { }
+                            }
+                        });
+                    } catch (IOException e) { System.out.println("Find: Error: " + e.toString() + ": " + db); }
+                }
+                return;
+            }
+              // -n keeps the best results in a bounded heap and prints them once the walk is done
+            if (top > 0) {
+                TopK ranking = new TopK(top, rank);
+                for (String path : paths) {
+                    Find.in(path, expr, prune, parallelism, flags, e -> {
+                        if (!printer.accepts(e)) return;
+                        try { ranking.offer(e.full()); }
+                        catch (IOException x) { Metrics.error(x); }    // gone since it was listed
+                    });
+                }
+                for (FileEntry e : ranking.ranked()) {
+                    try { printer.format(e, out); }
+                    catch (IOException x) { System.out.println("Find: Error: " + x.toString() + ": " + e); }
+                }
+                return;
+            }
+              // -duplicates prints each group of identical files, separated by blank lines
+            if (duplicates) {
+                Duplicates dups = new Duplicates(Math.max(parallelism, Runtime.getRuntime().availableProcessors()));
+                for (String path : paths) {
+                    Find.in(path, expr, prune, parallelism, flags, e -> {
+                        if (!printer.accepts(e)) return;
+                        try { dups.add(e.full()); }
+                        catch (IOException x) { Metrics.error(x); }    // gone since it was listed
+                    });
+                }
                 try {
-                    FileList fl = Find.in(path, pattern, prune);
-                    for (String output : fl.format()) System.out.println(output);
-                } catch (IOException e) { System.out.println("Find: Error: " + e.toString() + ": " + path); }
+                    boolean first = true;
+                    for (List<FileEntry> group : dups.groups()) {
+                        if (!first) out.newline();
+                        first = false;
+                        for (FileEntry e : group) printer.format(e, out);
+                    }
+                } catch (IOException x) { System.out.println("Find: Error: " + x.toString()); }
+                return;
+            }
+              // results show up as they are found, see OutputBuffer.stream
+            out.stream();
+            for (String path : paths) {
+                Find.in(path, expr, prune, parallelism, flags, e -> {
+                    if (!printer.accepts(e)) return;
+                    try {
+                          // records carry every attribute, so entries the walk didn't stat are read here
+                        FileEntry result = full ? e.full() : e;
+                        synchronized (out) { printer.format(result, out); }
+                    }
+                    catch (IOException x) { System.out.println("Find: Error: " + x.toString() + ": " + e); }
+                });
             }
         } else System.out.println(errorMsg);
     }
@@ -0,0 +1,487 @@
+package cli;
+
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+  // find(1) style expressions: the primaries -name, -type, -size, -mtime, -mmin, -newer,
+  // -perm, -user, -contains and -regex-content, combined with -and (or just putting them next
+  // to each other), -or, -not or !, and parentheses.
+  //
+  // parse() compiles the arguments into a predicate tree.  no predicate has side effects, so
+  // the operands of every -and and -or can be evaluated in any order, and they are sorted by
+  // cost: name tests first, then type tests, then tests that need the file's attributes, and
+  // last the ones that read the file.  or'ed -name tests, and -not -name tests and'ed with
+  // them, are merged into a single NameMatcher.  the entry is stat'ed at most once, and only
+  // when a test that needs it is actually reached.
+public abstract class FindExpr {
+
+    static final int NAME = 0;     // evaluation costs
+    static final int TYPE = 1;
+    static final int STAT = 2;
+    static final int CONTENT = 3;
+
+    public static FindExpr parse(List<String> args) throws IllegalArgumentException {
+        Parser p = new Parser(args);
+        FindExpr e = p.parseOr();
+        if (p.pos < args.size()) throw new IllegalArgumentException("unexpected '" + args.get(p.pos) + "'");
+        return e.simplify();
+    }
+
+    public static FindExpr name(NameMatcher m) {
+        return new Name(m);
+    }
+
+      // true for operators and primaries, i.e. anything that belongs to the expression
+    public static boolean isExpression(String arg) {
+        return OPERATORS.contains(arg) || PRIMARIES.contains(arg);
+    }
+
+    public static boolean takesArgument(String arg) {
+        return PRIMARIES.contains(arg);
+    }
+
+    public abstract boolean test(Candidate c) throws IOException;
+
+    abstract int cost();
+
+      // false if c can't match whatever its contents, decided without reading it: tests below
+      // CONTENT are run, content tests are taken to match.  a parallel walk reads only the files
+      // that pass this, each in its own task.
+    boolean possible(Candidate c) throws IOException {
+        return cost() < CONTENT ? test(c) : true;
+    }
+
+      // the single NameMatcher this expression consists of, or null if it tests anything else
+    NameMatcher nameOnly() {
+        return null;
+    }
+
+    FindExpr simplify() {
+        return this;
+    }
+
+      // the entry under test.  its attributes are only read when a test asks for them.
+    public static final class Candidate {
+        private final Path path;
+        private final String name;
+        private final boolean knownFile;
+        private FileEntry entry;
+
+        public Candidate(FileEntry entry) {
+            this.path = entry.path();
+            this.name = entry.name();
+            this.knownFile = false;
+            this.entry = entry;
+        }
+
+          // knownFile: the caller already knows this isn't a directory
+        Candidate(Path path, boolean knownFile) {
+            this.path = path;
+            this.name = path.getFileName().toString();
+            this.knownFile = knownFile;
+        }
+
+        public Path path()   { return path; }
+        public String name() { return name; }
+
+        public boolean isDirectory() throws IOException {
+            if (entry == null && knownFile) return false;
+            return entry().isDirectory();
+        }
+
+        public FileEntry entry() throws IOException {
+            if (entry == null) entry = FileEntry.of(path);
+            return entry;
+        }
+
+          // what to report: the full entry if it was read, else just the name and type
+        FileEntry result() {
+            return (entry != null) ? entry : FileEntry.partial(path, false);
+        }
+    }
+
+    private static final Set<String> OPERATORS = new HashSet<String>(Arrays.asList(
+        "(", ")", "!", "-not", "-a", "-and", "-o", "-or"));
+    private static final Set<String> PRIMARIES = new HashSet<String>(Arrays.asList(
+        "-name", "-type", "-size", "-mtime", "-mmin", "-newer", "-perm", "-user",
+        "-contains", "-regex-content"));
+
+    private static final class Parser {
+        private final List<String> args;
+        private final long now = System.currentTimeMillis();
+        int pos;
+
+        Parser(List<String> args) {
+            this.args = args;
+        }
+
+        FindExpr parseOr() {
+            FindExpr left = parseAnd();
+            while (peek("-o") || peek("-or")) {
+                pos++;
+                left = new Or(left, parseAnd());
+            }
+            return left;
+        }
+
+        FindExpr parseAnd() {
+            FindExpr left = parseUnary();
+            while (pos < args.size() && !peek("-o") && !peek("-or") && !peek(")")) {
+                if (peek("-a") || peek("-and")) pos++;
+                left = new And(left, parseUnary());
+            }
+            return left;
+        }
+
+        FindExpr parseUnary() {
+            if (pos == args.size()) throw new IllegalArgumentException("incomplete expression");
+            String arg = args.get(pos++);
+            switch (arg) {
+                case "!":
+                case "-not":
+                    return new Not(parseUnary());
+                case "(": {
+                    FindExpr e = parseOr();
+                    if (!peek(")")) throw new IllegalArgumentException("missing ')'");
+                    pos++;
+                    return e;
+                }
+                default:
+                    return primary(arg);
+            }
+        }
+
+        private FindExpr primary(String arg) {
+            if (!PRIMARIES.contains(arg)) throw new IllegalArgumentException("unexpected '" + arg + "'");
+            if (pos == args.size()) throw new IllegalArgumentException("missing argument to " + arg);
+            String value = args.get(pos++);
+            switch (arg) {
+                case "-name":  return new Name(Collections.singletonList(value), Collections.<String>emptyList());
+                case "-type":  return new Type(value);
+                case "-size":  return new Size(value);
+                case "-mtime": return new Age(arg, value, 24 * 60 * 60 * 1000L, now);
+                case "-mmin":  return new Age(arg, value, 60 * 1000L, now);
+                case "-newer": return new Newer(value);
+                case "-perm":  return new Perm(value);
+                case "-contains":      return new Content(ContentMatcher.literal(value));
+                case "-regex-content": return new Content(ContentMatcher.regex(value));
+                default:       return new User(value);
+            }
+        }
+
+        private boolean peek(String s) {
+            return pos < args.size() && args.get(pos).equals(s);
+        }
+    }
+
+      // -size, -mtime and -mmin take n, +n (more than n) or -n (less than n)
+    private static int sign(String value) {
+        return value.startsWith("+") ? 1 : value.startsWith("-") ? -1 : 0;
+    }
+
+    private static boolean compare(long actual, long n, int sign) {
+        return (sign > 0) ? actual > n : (sign < 0) ? actual < n : actual == n;
+    }
+
+    private static long number(String arg, String value) {
+        try { return Long.parseLong(value); }
+        catch (NumberFormatException e) { throw new IllegalArgumentException("invalid argument '" + value + "' to " + arg); }
+    }
+
+    private static final class Name extends FindExpr {
+        final List<String> include;
+        final List<String> exclude;
+        final NameMatcher matcher;
+
+        Name(List<String> include, List<String> exclude) {
+            this.include = include;
+            this.exclude = exclude;
+            this.matcher = NameMatcher.of(include, exclude);
+        }
+
+        Name(NameMatcher matcher) {
+            this.include = null;
+            this.exclude = null;
+            this.matcher = matcher;
+        }
+
+        public boolean test(Candidate c) {
+            return matcher.matches(c.name(), matcher.needsPath() ? c.path() : null);
+        }
+
+        int cost() { return NAME; }
+        NameMatcher nameOnly() { return matcher; }
+
+          // a plain '-name a -o -name b' list that can be merged with others
+        boolean isInclude() { return include != null && exclude.isEmpty(); }
+    }
+
+    private static final class Type extends FindExpr {
+        final char type;
+
+        Type(String value) {
+            if (value.length() != 1 || "dflpscb".indexOf(value.charAt(0)) == -1)
+                throw new IllegalArgumentException("unknown argument to -type: " + value);
+            type = value.charAt(0);
+        }
+
+        public boolean test(Candidate c) throws IOException {
+              // like find without -L, a link is of type l whatever it points to.  the walk
+              // itself still follows links.
+            if (type == 'd' && !c.isDirectory()) return false;
+            if (type != 'd' && c.isDirectory() && !c.entry().isSymbolicLink()) return false;
+            if (type == 'l') return c.entry().isSymbolicLink();
+            return c.entry().type() == type && !c.entry().isSymbolicLink();
+        }
+
+        int cost() { return TYPE; }
+    }
+
+    private static final class Size extends FindExpr {
+        final int sign;
+        final long n;
+        final long unit;
+
+        Size(String value) {
+            sign = sign(value);
+            String digits = (sign == 0) ? value : value.substring(1);
+            char suffix = digits.isEmpty() ? ' ' : digits.charAt(digits.length() - 1);
+            int u = "cwbkMG".indexOf(suffix);
+            if (u != -1) digits = digits.substring(0, digits.length() - 1);
+            unit = (u == -1) ? 512 : new long[] { 1, 2, 512, 1024, 1024 * 1024, 1024 * 1024 * 1024 }[u];
+            n = number("-size", digits);
+        }
+
+          // like find, the size is rounded up to whole units before comparing
+        public boolean test(Candidate c) throws IOException {
+            long size = c.entry().size();
+            return compare((size + unit - 1) / unit, n, sign);
+        }
+
+        int cost() { return STAT; }
+    }
+
+      // -mtime and -mmin: the age in whole units (days or minutes), counted from when parse ran
+    private static final class Age extends FindExpr {
+        final int sign;
+        final long n;
+        final long unit;
+        final long now;
+
+        Age(String arg, String value, long unit, long now) {
+            this.sign = sign(value);
+            this.n = number(arg, (sign == 0) ? value : value.substring(1));
+            this.unit = unit;
+            this.now = now;
+        }
+
+        public boolean test(Candidate c) throws IOException {
+            return compare((now - c.entry().lastModified()) / unit, n, sign);
+        }
+
+        int cost() { return STAT; }
+    }
+
+    private static final class Newer extends FindExpr {
+        final long time;
+
+        Newer(String file) {
+            try { time = FileEntry.of(Paths.get(file)).lastModified(); }
+            catch (IOException e) { throw new IllegalArgumentException("cannot access " + file + ": No such file or directory"); }
+        }
+
+        public boolean test(Candidate c) throws IOException {
+            return c.entry().lastModified() > time;
+        }
+
+        int cost() { return STAT; }
+    }
+
+      // -perm MODE exactly MODE, -perm -MODE all of these bits, -perm /MODE any of them.  octal only.
+    private static final class Perm extends FindExpr {
+        final char kind;
+        final int bits;
+
+        Perm(String value) {
+            kind = (value.startsWith("-") || value.startsWith("/")) ? value.charAt(0) : '=';
+            String digits = (kind == '=') ? value : value.substring(1);
+            try { bits = Integer.parseInt(digits, 8); }
+            catch (NumberFormatException e) { throw new IllegalArgumentException("invalid mode '" + value + "' to -perm, only octal modes are supported"); }
+        }
+
+        public boolean test(Candidate c) throws IOException {
+            int mode = c.entry().mode();
+            if (mode == -1) return false;
+            switch (kind) {
+                case '-': return (mode & bits) == bits;
+                case '/': return bits == 0 || (mode & bits) != 0;
+                default:  return mode == bits;
+            }
+        }
+
+        int cost() { return STAT; }
+    }
+
+    private static final class User extends FindExpr {
+        final String name;
+        final int uid;
+
+        User(String value) {
+            int u;
+            try { u = Integer.parseInt(value); }
+            catch (NumberFormatException e) { u = -1; }
+            name = value;
+            uid = u;
+        }
+
+        public boolean test(Candidate c) throws IOException {
+            FileEntry e = c.entry();
+            return (uid != -1) ? e.uid() == uid : e.owner().equals(name);
+        }
+
+        int cost() { return STAT; }
+    }
+
+      // -contains TEXT and -regex-content REGEX: regular files whose contents match, see ContentMatcher
+    private static final class Content extends FindExpr {
+        final ContentMatcher matcher;
+
+        Content(ContentMatcher matcher) {
+            this.matcher = matcher;
+        }
+
+        public boolean test(Candidate c) throws IOException {
+            if (c.isDirectory()) return false;
+            FileEntry e = c.entry();
+            if (e.type() != 'f') return false;
+            try { return matcher.matches(e.path(), e.size()); }
+            catch (IOException x) {
+                  // like a directory find can't read; a file that is gone since it was listed isn't
+                if (!(x instanceof NoSuchFileException)) {
+                    String why = (x instanceof AccessDeniedException) ? "permission denied" : x.toString();
+                    System.out.println("Find: Error: cannot read " + e.path() + ": " + why);
+                }
+                throw x;
+            }
+        }
+
+        int cost() { return CONTENT; }
+    }
+
+    private static final class Not extends FindExpr {
+        final FindExpr operand;
+
+        Not(FindExpr operand) {
+            this.operand = operand;
+        }
+
+        public boolean test(Candidate c) throws IOException {
+            return !operand.test(c);
+        }
+
+        int cost() { return operand.cost(); }
+
+        FindExpr simplify() {
+            FindExpr e = operand.simplify();
+            return (e instanceof Not) ? ((Not) e).operand : new Not(e);
+        }
+    }
+
+    private static abstract class Group extends FindExpr {
+        final List<FindExpr> operands = new ArrayList<FindExpr>();
+
+        int cost() {
+            int cost = NAME;
+            for (FindExpr e : operands) cost = Math.max(cost, e.cost());
+            return cost;
+        }
+
+          // flatten nested groups of the same kind, merge name tests, then put the cheap tests first
+        FindExpr simplify() {
+            List<FindExpr> flat = new ArrayList<FindExpr>();
+            for (FindExpr e : operands) {
+                e = e.simplify();
+                if (e.getClass() == getClass()) flat.addAll(((Group) e).operands);
+                else flat.add(e);
+            }
+            flat = merge(flat);
+            flat.sort(Comparator.comparingInt(FindExpr::cost));
+            if (flat.size() == 1) return flat.get(0);
+            Group g = (this instanceof And) ? new And() : new Or();
+            g.operands.addAll(flat);
+            return g;
+        }
+
+        abstract List<FindExpr> merge(List<FindExpr> operands);
+    }
+
+    private static final class And extends Group {
+        And(FindExpr ... operands) {
+            this.operands.addAll(Arrays.asList(operands));
+        }
+
+        public boolean test(Candidate c) throws IOException {
+            for (FindExpr e : operands) if (!e.test(c)) return false;
+            return true;
+        }
+
+        boolean possible(Candidate c) throws IOException {
+            for (FindExpr e : operands) if (!e.possible(c)) return false;
+            return true;
+        }
+
+          // -name a -not -name b -not -name c becomes one matcher for a, excluding b and c
+        List<FindExpr> merge(List<FindExpr> operands) {
+            List<FindExpr> out = new ArrayList<FindExpr>();
+            Name positive = null;
+            List<String> excluded = new ArrayList<String>();
+            for (FindExpr e : operands) {
+                if (positive == null && e instanceof Name && ((Name) e).isInclude()) positive = (Name) e;
+                else if (e instanceof Not && ((Not) e).operand instanceof Name && ((Name) ((Not) e).operand).isInclude())
+                    excluded.addAll(((Name) ((Not) e).operand).include);
+                else out.add(e);
+            }
+            if (positive == null && excluded.isEmpty()) return out;
+            out.add(new Name(positive == null ? Collections.<String>emptyList() : positive.include, excluded));
+            return out;
+        }
+    }
+
+    private static final class Or extends Group {
+        Or(FindExpr ... operands) {
+            this.operands.addAll(Arrays.asList(operands));
+        }
+
+        public boolean test(Candidate c) throws IOException {
+            for (FindExpr e : operands) if (e.test(c)) return true;
+            return false;
+        }
+
+        boolean possible(Candidate c) throws IOException {
+            for (FindExpr e : operands) if (e.possible(c)) return true;
+            return false;
+        }
+
+          // -name a -o -name b -o ... becomes one matcher for all of them
+        List<FindExpr> merge(List<FindExpr> operands) {
+            List<FindExpr> out = new ArrayList<FindExpr>();
+            List<String> included = new ArrayList<String>();
+            for (FindExpr e : operands) {
+                if (e instanceof Name && ((Name) e).isInclude()) included.addAll(((Name) e).include);
+                else out.add(e);
+            }
+            if (!included.isEmpty()) out.add(new Name(included, Collections.<String>emptyList()));
+            return out;
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package cli;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+  // locate-style index for Find.  update() walks the given roots once and writes every directory
+  // as a block: the directory path and mtime, followed by its entries (name, type, size, mtime)
+  // sorted by name.  paths and names are prefix-compressed against the previous one.  query()
+  // memory-maps the index and answers -name/-prune from it without touching the tree.
+  //
+  // the walk is the same as Find's: links to directories are followed, and -name/-prune see the
+  // path the walk took, while results are reported by their canonical path.  so each block also
+  // holds the directory's canonical path, and each link the canonical path of its target.
+  //
+  // refreshing an existing index only re-reads directories whose mtime changed, the entries of
+  // the others are copied from the old index.  so, like locate, the size and time of a file that
+  // was modified in place are only as fresh as the last change to its directory.
+public class FindIndex {
+
+    private static final int MAGIC   = 0x464c4958;  // "FLIX"
+    private static final int VERSION = 2;
+
+    private static final int DIRECTORY  = 1;         // entry flags
+    private static final int UNREADABLE = 2;
+    private static final int LINK       = 4;
+
+      // (re)build the index at 'index' for the given root directories.  the new index is
+      // written next to the old one and moved into place when complete.
+    public static void update(Path index, Collection<String> roots) throws IOException {
+        Block old = null;
+        Map<String, Integer> oldBlocks = new HashMap<String, Integer>();
+        if (Files.exists(index)) {
+            try {
+                old = new Block(map(index));
+                while (old.next()) oldBlocks.put(old.dir, old.childrenStart);
+            } catch (IOException e) { old = null; oldBlocks.clear(); }  // unusable, rebuild from scratch
+        }
+        Path tmp = index.resolveSibling(index.getFileName() + ".tmp");
+        try (Writer w = new Writer(Files.newOutputStream(tmp))) {
+            for (String root : roots) {
+                FileEntry dir;
+                try { dir = FileEntry.of(Paths.get(root).toRealPath()); }
+                catch (IOException e) { System.out.println("Find: Error: cannot read " + root + ": No such file or directory"); continue; }
+                if (dir.isDirectory()) walk(dir, dir.path().toString(), w, old, oldBlocks);
+            }
+        }
+        Files.move(tmp, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+      // stream every indexed entry under root that Find.in(root, pattern, prune) would report, by
+      // the canonical path Find prints.  root must be canonical, as the indexed roots are.
+    public static void query(Path index, String root, String pattern, String prune, Consumer<FileEntry> sink) throws IOException {
+        query(index, root, Find.matcher(pattern), Find.matcher(prune), sink);
+    }
+
+    public static void query(Path index, String root, NameMatcher patternMatch, NameMatcher pruningMatch, Consumer<FileEntry> sink) throws IOException {
+          // the full path is only built for entries that are reported, unless some pattern needs it
+        boolean patternByName = patternMatch == null || !patternMatch.needsPath();
+        String under = root.endsWith("/") ? root : root + "/";
+        String pruned = null;      // the last pruned directory, whose blocks follow it
+        Block b = new Block(map(index));
+        while (b.next()) {
+            if (!b.dir.equals(root) && !b.dir.startsWith(under)) continue;
+            if (pruned != null && b.dir.startsWith(pruned)) continue;
+            Path dir = Paths.get(b.dir);
+            Path dirName = dir.getFileName();
+            if (pruningMatch != null && pruningMatch.matches(dirName == null ? b.dir : dirName.toString(), dir)) {
+                pruned = b.dir + "/";
+                continue;
+            }
+            boolean isUnreadable = (b.flags & UNREADABLE) != 0;
+            Path real = Paths.get(b.real);
+            if (isUnreadable) System.out.println("Find: Error: cannot read " + b.dir + ": permission denied");
+            else if (patternMatch == null) sink.accept(new FileEntry(real, true, b.size, b.mtime, -1, -1, -1, "?", "?", 0, 0, 1));
+            b.children((name, flags, size, mtime, link) -> {
+                boolean isDir = (flags & DIRECTORY) != 0;
+                if (patternMatch != null) {
+                    if (!patternMatch.matches(name, patternByName ? null : dir.resolve(name))) return;
+                    if (isDir && (flags & UNREADABLE) != 0) return;
+                } else if (isDir) return;  // reported with its own block
+                if (!isDir && isUnreadable) return;
+                Path path = (link != null) ? Paths.get(link) : real.resolve(name);
+                sink.accept(new FileEntry(path, isDir, size, mtime, -1, -1, -1, "?", "?", 0, 0, 1));
+            });
+        }
+    }
+
+      // write the block for dir, whose canonical path is real, then recurse into its
+      // subdirectories in name order
+    private static void walk(FileEntry dir, String real, Writer w, Block old, Map<String, Integer> oldBlocks) throws IOException {
+        String dirName = dir.path().toString();
+        List<Child> children = new ArrayList<Child>();
+        int flags = DIRECTORY;
+        Integer oldStart = oldBlocks.get(dirName);
+        if (!dir.canRead()) {
+            flags |= UNREADABLE;
+        } else if (oldStart != null && old.mtimeAt(oldStart) == dir.lastModified() && (old.flagsAt(oldStart) & UNREADABLE) == 0) {
+              // unchanged since the last update: reuse the entries, only subdirectories are re-stat'ed.
+              // one that couldn't be read then is read again, chmod doesn't change the mtime.
+            old.childrenAt(oldStart, (name, f, size, mtime, link) -> {
+                if ((f & DIRECTORY) == 0) { children.add(new Child(name, f, size, mtime, link, null)); return; }
+                try { children.add(Child.of(name, FileEntry.of(dir.path().resolve(name)))); }
+                catch (IOException x) { Metrics.error(x); }
+            });
+        } else {
+            try (DirectoryStream<Path> contents = Files.newDirectoryStream(dir.path())) {
+                for (Path p : contents) {
+                    try { children.add(Child.of(p.getFileName().toString(), FileEntry.of(p))); }
+                    catch (IOException x) { Metrics.error(x); }  // vanished, or a dangling link
+                }
+            } catch (IOException e) { flags |= UNREADABLE; children.clear(); Metrics.error(e); }
+            children.sort(Comparator.comparing((Child c) -> c.name));
+        }
+        w.block(dirName, real, dir.size(), dir.lastModified(), flags, children);
+        for (Child c : children) {
+            if (c.entry != null && c.entry.isDirectory())
+                walk(c.entry, (c.link != null) ? c.link : real + "/" + c.name, w, old, oldBlocks);
+        }
+    }
+
+    private static ByteBuffer map(Path index) throws IOException {
+        try (FileChannel ch = FileChannel.open(index, StandardOpenOption.READ)) {
+            if (ch.size() > Integer.MAX_VALUE) throw new IOException("index too large to map: " + index);
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (buf.remaining() < 8 || buf.getInt() != MAGIC || buf.getInt() != VERSION)
+                throw new IOException("not a FileList index: " + index);
+            return buf;
+        }
+    }
+
+    private static final class Child {
+        final String name;
+        final int flags;
+        final long size;
+        final long mtime;
+        final String link;         // the canonical path of a link's target, else null
+        final FileEntry entry;     // set for freshly read entries and for directories
+
+        Child(String name, int flags, long size, long mtime, String link, FileEntry entry) {
+            this.name = name;
+            this.flags = flags;
+            this.size = size;
+            this.mtime = mtime;
+            this.link = link;
+            this.entry = entry;
+        }
+
+        static Child of(String name, FileEntry e) throws IOException {
+            int flags = e.isDirectory() ? DIRECTORY : 0;
+            if (e.isDirectory() && !e.canRead()) flags |= UNREADABLE;
+            String link = null;
+            if (e.isSymbolicLink()) {
+                flags |= LINK;
+                link = e.path().toRealPath().toString();
+            }
+            return new Child(name, flags, e.size(), e.lastModified(), link, e);
+        }
+    }
+
+    interface ChildVisitor {
+        void visit(String name, int flags, long size, long mtime, String link);
+    }
+
+      // writes blocks, each one being
+      //   dir path (prefix-compressed against the previous block's), canonical path
+      //   (prefix-compressed against the dir path), size, mtime, flags, entry count, byte length
+      //   of the entries, then the entries themselves: name (prefix-compressed against the
+      //   previous name), flags, size, mtime, and for a LINK the canonical path of its target
+    private static final class Writer implements AutoCloseable {
+        private final DataOutputStream out;
+        private final ByteArrayOutputStream blockBytes = new ByteArrayOutputStream(1 << 16);
+        private final DataOutputStream block = new DataOutputStream(blockBytes);
+        private byte[] lastDir = new byte[0];
+        private static final byte[] EMPTY = new byte[0];
+
+        Writer(OutputStream os) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(os, 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+        }
+
+        void block(String dir, String real, long size, long mtime, int flags, List<Child> children) throws IOException {
+            byte[] path = dir.getBytes(StandardCharsets.UTF_8);
+            writeCompressed(out, lastDir, path);
+            writeCompressed(out, path, real.getBytes(StandardCharsets.UTF_8));
+            lastDir = path;
+            writeVarLong(out, size);
+            out.writeLong(mtime);
+            out.writeByte(flags);
+
+            blockBytes.reset();
+            byte[] lastName = new byte[0];
+            for (Child c : children) {
+                byte[] name = c.name.getBytes(StandardCharsets.UTF_8);
+                writeCompressed(block, lastName, name);
+                lastName = name;
+                block.writeByte(c.flags);
+                writeVarLong(block, c.size);
+                block.writeLong(c.mtime);
+                if (c.link != null) writeCompressed(block, EMPTY, c.link.getBytes(StandardCharsets.UTF_8));
+            }
+            writeVarLong(out, children.size());
+            writeVarLong(out, blockBytes.size());
+            blockBytes.writeTo(out);
+        }
+
+        public void close() throws IOException {
+            out.close();
+        }
+
+        private static void writeCompressed(DataOutputStream out, byte[] last, byte[] next) throws IOException {
+            int shared = 0;
+            int max = Math.min(last.length, next.length);
+            while (shared < max && last[shared] == next[shared]) shared++;
+            writeVarLong(out, shared);
+            writeVarLong(out, next.length - shared);
+            out.write(next, shared, next.length - shared);
+        }
+
+        private static void writeVarLong(DataOutputStream out, long v) throws IOException {
+            while ((v & ~0x7fL) != 0) {
+                out.writeByte((int) ((v & 0x7f) | 0x80));
+                v >>>= 7;
+            }
+            out.writeByte((int) v);
+        }
+    }
+
+      // cursor over the blocks of a mapped index
+    private static final class Block {
+        private final ByteBuffer buf;
+        private byte[] dirBytes = new byte[256];
+        private int dirLength = 0;
+        private byte[] nameBytes = new byte[256];
+        private byte[] scratch = new byte[256];
+
+        String dir;
+        String real;
+        long size;
+        long mtime;
+        int flags;
+        int count;
+        int childrenStart;        // offset of the entry count, for childrenAt()
+
+        Block(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        boolean next() {
+            if (!buf.hasRemaining()) return false;
+            dirBytes = ensure(dirBytes, buf);
+            dirLength = readCompressed(buf, dirLength, dirBytes);
+            dir = new String(dirBytes, 0, dirLength, StandardCharsets.UTF_8);
+            real = readAgainst(buf, dirBytes, dirLength, dir);
+            size = readVarLong(buf);
+            mtime = buf.getLong();
+            flags = buf.get();
+            childrenStart = buf.position();
+            count = (int) readVarLong(buf);
+            int length = (int) readVarLong(buf);
+            buf.position(buf.position() + length);
+            return true;
+        }
+
+        long mtimeAt(int start) {
+              // the mtime sits right before the flags byte, which sits right before start
+            return buf.getLong(start - 9);
+        }
+
+        int flagsAt(int start) {
+            return buf.get(start - 1);
+        }
+
+        void children(ChildVisitor v) {
+            childrenAt(childrenStart, v);
+        }
+
+        void childrenAt(int start, ChildVisitor v) {
+            ByteBuffer b = buf.duplicate();
+            b.position(start);
+            int n = (int) readVarLong(b);
+            readVarLong(b);
+            int nameLength = 0;
+            for (int i = 0; i < n; i++) {
+                nameBytes = ensure(nameBytes, b);
+                nameLength = readCompressed(b, nameLength, nameBytes);
+                String name = new String(nameBytes, 0, nameLength, StandardCharsets.UTF_8);
+                int f = b.get();
+                long s = readVarLong(b);
+                long m = b.getLong();
+                String link = ((f & LINK) != 0) ? readAgainst(b, nameBytes, 0, null) : null;
+                v.visit(name, f, s, m, link);
+            }
+        }
+
+          // a path compressed against the first length bytes of base, which decode to same (or
+          // null), without disturbing base
+        private String readAgainst(ByteBuffer b, byte[] base, int length, String same) {
+            int shared = (int) readVarLong(b);
+            int rest = (int) readVarLong(b);
+            if (rest == 0 && shared == length && same != null) return same;
+            if (scratch.length < shared + rest) scratch = new byte[Math.max(shared + rest, scratch.length * 2)];
+            System.arraycopy(base, 0, scratch, 0, shared);
+            b.get(scratch, shared, rest);
+            return new String(scratch, 0, shared + rest, StandardCharsets.UTF_8);
+        }
+
+          // grow the scratch buffer if the next compressed value won't fit
+        private static byte[] ensure(byte[] scratch, ByteBuffer b) {
+            int p = b.position();
+            int needed = (int) readVarLong(b) + (int) readVarLong(b);
+            b.position(p);
+            return needed <= scratch.length ? scratch : java.util.Arrays.copyOf(scratch, Math.max(needed, scratch.length * 2));
+        }
+
+        private static int readCompressed(ByteBuffer b, int lastLength, byte[] into) {
+            int shared = (int) readVarLong(b);
+            int rest = (int) readVarLong(b);
+            b.get(into, shared, rest);
+            return shared + rest;
+        }
+
+        private static long readVarLong(ByteBuffer b) {
+            long v = 0;
+            int shift = 0;
+            byte x;
+            do {
+                x = b.get();
+                v |= (long) (x & 0x7f) << shift;
+                shift += 7;
+            } while ((x & 0x80) != 0);
+            return v;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package cli;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+  // counters and timers for one run of FileList or Find, so a slow run can be pinned on
+  // directory reads, stats, sorting, formatting or output.  nothing is recorded unless a
+  // Metrics is enabled; until then every hook is a single read of a static field.
+  //
+  // the read and stat timers are summed over all threads, so in a parallel walk they can add
+  // up to more than the elapsed time.  every directory read is also a Flight Recorder event
+  // while a recording with it enabled is running.  until a recording starts no jdk.jfr class
+  // beyond FlightRecorder is loaded, see Jfr.
+public class Metrics {
+
+      // counters
+    public static final int DIRECTORIES = 0;    // directories read
+    public static final int ENTRIES     = 1;    // directory entries seen
+    public static final int STATS       = 2;    // attribute reads
+    public static final int MATCHES     = 3;    // NameMatcher evaluations, -name and -prune
+    public static final int PRUNED      = 4;    // directories skipped by -prune
+    public static final int BYTES       = 5;    // bytes of output written
+
+      // timers
+    public static final int READ   = 0;         // reading directory entries
+    public static final int STAT   = 1;         // reading attributes
+    public static final int SORT   = 2;
+    public static final int FORMAT = 3;
+    public static final int OUTPUT = 4;         // writing to the output stream
+
+    private static volatile Metrics current;
+
+      // start recording into a new Metrics, and return it
+    public static Metrics enable() {
+        Metrics m = new Metrics();
+        current = m;
+        return m;
+    }
+
+    public static void disable() {
+        current = null;
+    }
+
+      // what is being recorded into, or null
+    public static Metrics current() {
+        return current;
+    }
+
+    public long get(int counter)  { return counters[counter].sum(); }
+    public long nanos(int timer)  { return timers[timer].sum(); }
+    public long elapsedNanos()    { return System.nanoTime() - started; }
+
+      // error counts by exception type
+    public Map<String, Long> errors() {
+        Map<String, Long> out = new TreeMap<String, Long>();
+        for (Map.Entry<String, LongAdder> e : errors.entrySet()) out.put(e.getKey(), e.getValue().sum());
+        return out;
+    }
+
+      // a few lines for -stats
+    public List<String> summary() {
+        List<String> out = new ArrayList<String>();
+        out.add(get(DIRECTORIES) + " directories, " + get(ENTRIES) + " entries, " + get(STATS) + " stats, "
+            + get(MATCHES) + " matcher evaluations, " + get(PRUNED) + " pruned, " + get(BYTES) + " bytes written");
+        StringBuilder sb = new StringBuilder("errors:");
+        Map<String, Long> errs = errors();
+        if (errs.isEmpty()) sb.append(" none");
+        for (Map.Entry<String, Long> e : errs.entrySet()) sb.append(' ').append(e.getKey()).append(' ').append(e.getValue());
+        out.add(sb.toString());
+        out.add(String.format("time %.1f ms: read %.1f, stat %.1f, sort %.1f, format %.1f, output %.1f",
+            elapsedNanos() / 1e6, nanos(READ) / 1e6, nanos(STAT) / 1e6, nanos(SORT) / 1e6,
+            nanos(FORMAT) / 1e6, nanos(OUTPUT) / 1e6));
+        return out;
+    }
+
+      // hooks for the code being measured.  start() returns 0 when disabled, and stop()
+      // ignores timings that were started before metrics were enabled.
+    static void increment(int counter) {
+        Metrics m = current;
+        if (m != null) m.counters[counter].increment();
+    }
+
+    static void add(int counter, long n) {
+        Metrics m = current;
+        if (m != null) m.counters[counter].add(n);
+    }
+
+    static long start() {
+        return (current == null) ? 0 : System.nanoTime();
+    }
+
+    static void stop(int timer, long start) {
+        Metrics m = current;
+        if (m != null && start != 0) m.timers[timer].add(System.nanoTime() - start);
+    }
+
+    static void error(Throwable t) {
+        error(t.getClass().getSimpleName());
+    }
+
+    static void error(String type) {
+        Metrics m = current;
+        if (m != null) m.errors.computeIfAbsent(type, k -> new LongAdder()).increment();
+    }
+
+    private final LongAdder[] counters = adders(6);
+    private final LongAdder[] timers = adders(5);
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<String, LongAdder>();
+    private final long started = System.nanoTime();
+
+    private Metrics() { }
+
+    private static LongAdder[] adders(int n) {
+        LongAdder[] a = new LongAdder[n];
+        for (int i = 0; i < n; i++) a[i] = new LongAdder();
+        return a;
+    }
+
+      // before reading a directory: the event to hand to directoryRead, or null when no
+      // recording is running or it doesn't record directory reads
+    static Object directoryStart() {
+        return FlightRecorder.isInitialized() ? Jfr.start() : null;
+    }
+
+      // after reading it, with the directoryStart result
+    static void directoryRead(Object event, String path, int entries, int errors) {
+        if (event != null) Jfr.commit(event, path, entries, errors);
+    }
+
+      // everything that touches the event classes, which are only loaded once a recording has
+      // been started.  loading them costs about a hundred classes, a good part of a short run.
+    private static final class Jfr {
+        static Object start() {
+            DirectoryEvent event = new DirectoryEvent();
+            if (!event.isEnabled()) return null;
+            event.begin();
+            return event;
+        }
+
+        static void commit(Object e, String path, int entries, int errors) {
+            DirectoryEvent event = (DirectoryEvent) e;
+            if (!event.shouldCommit()) return;
+            event.path = path;
+            event.entries = entries;
+            event.errors = errors;
+            event.commit();
+        }
+    }
+
+      // one directory read, for JDK Flight Recorder.  the duration covers reading the
+      // directory and handling its entries.
+    @Name("cli.DirectoryRead")
+    @Label("Directory Read")
+    @Category("FileList")
+    @Description("One directory read by FileList or Find")
+    static class DirectoryEvent extends Event {
+        @Label("Path")
+        String path;
+
+        @Label("Entries")
+        int entries;
+
+        @Label("Errors")
+        int errors;
+    }
+}
@@ -0,0 +1,270 @@
+package cli;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+  // any number of -name globs compiled into one matcher that only looks at the file name.
+  // a name matches if it matches any of the included patterns (or there are none) and none
+  // of the excluded ones.
+  //
+  // the common shapes get their own structure, so the cost of a match depends on the length of
+  // the name rather than on the number of patterns:
+  //   exact names       'Makefile'   hash set
+  //   prefixes          'foo*'       trie, walked from the front of the name
+  //   suffixes          '*.log'      trie, walked from the back of the name
+  //   substrings        '*core*'     Aho-Corasick automaton
+  // none of these allocate.  every other glob goes into a single combined regex, and globs
+  // that contain a '/' are matched against the whole path like before.
+public class NameMatcher {
+
+    public static NameMatcher of(String ... include) {
+        return of(Arrays.asList(include), Collections.<String>emptyList());
+    }
+
+    public static NameMatcher of(List<String> include, List<String> exclude) {
+        return new NameMatcher(new PatternSet(include), new PatternSet(exclude));
+    }
+
+    public boolean matches(String name) {
+        return matches(name, null);
+    }
+
+      // path is only needed if some pattern contains a '/', see needsPath()
+    public boolean matches(String name, Path path) {
+        Metrics.increment(Metrics.MATCHES);
+        if (!include.isEmpty() && !include.matches(name, path)) return false;
+        return exclude.isEmpty() || !exclude.matches(name, path);
+    }
+
+    public boolean needsPath() {
+        return include.needsPath() || exclude.needsPath();
+    }
+
+    private final PatternSet include;
+    private final PatternSet exclude;
+
+    private NameMatcher(PatternSet include, PatternSet exclude) {
+        this.include = include;
+        this.exclude = exclude;
+    }
+
+    private static final class PatternSet {
+        private final Set<String> literals = new HashSet<String>();
+        private final Trie prefixes = new Trie();
+        private final Trie suffixes = new Trie();
+        private final AhoCorasick substrings = new AhoCorasick();
+        private final Pattern globs;
+        private final List<PathMatcher> pathMatchers = new ArrayList<PathMatcher>();
+        private final boolean empty;
+
+        PatternSet(List<String> patterns) {
+            StringBuilder regex = new StringBuilder();
+            for (String p : patterns) {
+                int star = p.indexOf('*');
+                if (p.indexOf('/') != -1) {
+                    pathMatchers.add(FileSystems.getDefault().getPathMatcher("glob:**/" + p));
+                } else if (isLiteral(p, 0, p.length())) {
+                    literals.add(p);
+                } else if (star == p.length() - 1 && isLiteral(p, 0, star)) {
+                    prefixes.add(p.substring(0, star), false);
+                } else if (star == 0 && isLiteral(p, 1, p.length())) {
+                    suffixes.add(p.substring(1), true);
+                } else if (star == 0 && p.length() > 1 && p.indexOf('*', 1) == p.length() - 1
+                           && isLiteral(p, 1, p.length() - 1)) {
+                    substrings.add(p.substring(1, p.length() - 1));
+                } else {
+                    if (regex.length() > 0) regex.append('|');
+                    regex.append("(?:").append(globToRegex(p)).append(')');
+                }
+            }
+            substrings.build();
+            globs = (regex.length() == 0) ? null : Pattern.compile(regex.toString(), Pattern.DOTALL);
+            empty = patterns.isEmpty();
+        }
+
+        boolean isEmpty()   { return empty; }
+        boolean needsPath() { return !pathMatchers.isEmpty(); }
+
+        boolean matches(String name, Path path) {
+            if (literals.contains(name)) return true;
+            if (prefixes.matchesPrefix(name)) return true;
+            if (suffixes.matchesSuffix(name)) return true;
+            if (substrings.matches(name)) return true;
+            if (globs != null && globs.matcher(name).matches()) return true;
+            if (path != null) for (PathMatcher m : pathMatchers) if (m.matches(path)) return true;
+            return false;
+        }
+
+        private static boolean isLiteral(String p, int from, int to) {
+            for (int n = from; n < to; n++) {
+                switch (p.charAt(n)) {
+                    case '*': case '?': case '[': case '{': case '\\':
+                        return false;
+                }
+            }
+            return true;
+        }
+    }
+
+      // glob syntax as in FileSystem.getPathMatcher, for a single name component
+    static String globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        boolean inGroup = false;
+        for (int n = 0; n < glob.length(); n++) {
+            char c = glob.charAt(n);
+            switch (c) {
+                case '*':
+                    regex.append(".*");
+                    break;
+                case '?':
+                    regex.append('.');
+                    break;
+                case '\\':
+                    if (++n < glob.length()) regex.append(Pattern.quote(String.valueOf(glob.charAt(n))));
+                    break;
+                case '[': {
+                    int close = glob.indexOf(']', n + 2);
+                    if (close == -1) { regex.append("\\["); break; }
+                    String set = glob.substring(n + 1, close);
+                    if (set.startsWith("!")) set = "^" + set.substring(1);
+                    regex.append('[').append(set.replace("\\", "\\\\").replace("[", "\\[")).append(']');
+                    n = close;
+                    break;
+                }
+                case '{':
+                    regex.append("(?:");
+                    inGroup = true;
+                    break;
+                case '}':
+                    regex.append(inGroup ? ")" : "\\}");
+                    inGroup = false;
+                    break;
+                case ',':
+                    regex.append(inGroup ? "|" : ",");
+                    break;
+                default:
+                    if ("^$.|+()".indexOf(c) != -1) regex.append('\\');
+                    regex.append(c);
+            }
+        }
+        return regex.toString();
+    }
+
+      // character trie.  a name matches if walking it from the front (or the back) reaches a
+      // node where some pattern ends.
+    private static final class Trie {
+        private final Node root = new Node();
+
+        void add(String s, boolean reversed) {
+            Node node = root;
+            for (int n = 0; n < s.length(); n++)
+                node = node.child(s.charAt(reversed ? s.length() - 1 - n : n), true);
+            node.terminal = true;
+        }
+
+        boolean matchesPrefix(String name) {
+            Node node = root;
+            for (int n = 0; node != null; n++) {
+                if (node.terminal) return true;
+                if (n == name.length()) return false;
+                node = node.child(name.charAt(n), false);
+            }
+            return false;
+        }
+
+        boolean matchesSuffix(String name) {
+            Node node = root;
+            for (int n = name.length() - 1; node != null; n--) {
+                if (node.terminal) return true;
+                if (n < 0) return false;
+                node = node.child(name.charAt(n), false);
+            }
+            return false;
+        }
+    }
+
+      // multi-pattern substring matcher: a trie of the patterns with failure links, so the
+      // name is scanned once no matter how many patterns there are
+    private static final class AhoCorasick {
+        private final Node root = new Node();
+        private boolean any = false;
+
+        void add(String s) {
+            Node node = root;
+            for (int n = 0; n < s.length(); n++) node = node.child(s.charAt(n), true);
+            node.terminal = true;
+            any = true;
+        }
+
+        void build() {
+            Queue<Node> queue = new ArrayDeque<Node>();
+            root.fail = root;
+            for (int i = 0; i < root.size; i++) {
+                root.next[i].fail = root;
+                queue.add(root.next[i]);
+            }
+            Node node;
+            while ((node = queue.poll()) != null) {
+                for (int i = 0; i < node.size; i++) {
+                    Node child = node.next[i];
+                    Node f = node.fail;
+                    Node target;
+                    while ((target = f.child(node.keys[i], false)) == null && f != root) f = f.fail;
+                    child.fail = (target != null && target != child) ? target : root;
+                    if (child.fail.terminal) child.terminal = true;
+                    queue.add(child);
+                }
+            }
+        }
+
+        boolean matches(String name) {
+            if (!any) return false;
+            if (root.terminal) return true;       // '**'
+            Node node = root;
+            for (int n = 0; n < name.length(); n++) {
+                char c = name.charAt(n);
+                Node next;
+                while ((next = node.child(c, false)) == null && node != root) node = node.fail;
+                node = (next == null) ? root : next;
+                if (node.terminal) return true;
+            }
+            return false;
+        }
+    }
+
+      // children are kept in sorted parallel arrays, searched with a binary search
+    private static final class Node {
+        char[] keys = new char[0];
+        Node[] next = new Node[0];
+        int size;
+        boolean terminal;
+        Node fail;
+
+        Node child(char c, boolean create) {
+            int i = Arrays.binarySearch(keys, 0, size, c);
+            if (i >= 0) return next[i];
+            if (!create) return null;
+            i = -i - 1;
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, Math.max(2, size * 2));
+                next = Arrays.copyOf(next, Math.max(2, size * 2));
+            }
+            System.arraycopy(keys, i, keys, i + 1, size - i);
+            System.arraycopy(next, i, next, i + 1, size - i);
+            keys[i] = c;
+            next[i] = new Node();
+            size++;
+            return next[i];
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package cli;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+  // a large reusable byte buffer in front of an OutputStream, handed to the stream in blocks.
+  // FileList and Find append the fields of each line to it directly, instead of building a
+  // String per line and printing it.  text is written as UTF-8.
+  //
+  // the OutputStream methods, write(), flush() and close(), hold the buffer's own monitor, so a
+  // PrintStream around it (whatever lock it takes itself) and the flusher of stream() never
+  // run into each other.  the append methods don't; a caller that appends from several
+  // threads holds the buffer's monitor around each line.
+
+public class OutputBuffer extends OutputStream {
+
+    public static final int SIZE = 1 << 16;
+    public static final long LATENCY = 100;     // ms a line may wait in the buffer, see stream()
+
+    public OutputBuffer(OutputStream out) {
+        this(out, SIZE);
+    }
+
+    public OutputBuffer(OutputStream out, int size) {
+        this.out = out;
+        this.buf = new byte[Math.max(size, 16)];
+    }
+
+    public OutputBuffer append(String s) throws IOException {
+        return append(s, 0, s.length());
+    }
+
+      // the characters of s from index from up to, not including, to
+    public OutputBuffer append(String s, int from, int to) throws IOException {
+        for (int n = from; n < to; n++) {
+            char c = s.charAt(n);
+            if (c < 0x80) {
+                if (count == buf.length) drain();
+                buf[count++] = (byte) c;
+            } else if (Character.isHighSurrogate(c) && n + 1 < to && Character.isLowSurrogate(s.charAt(n + 1))) {
+                appendCodePoint(Character.toCodePoint(c, s.charAt(++n)));
+            } else appendCodePoint(c);
+        }
+        return this;
+    }
+
+    public OutputBuffer append(char c) throws IOException {
+        if (c >= 0x80) return appendCodePoint(c);
+        if (count == buf.length) drain();
+        buf[count++] = (byte) c;
+        return this;
+    }
+
+    public OutputBuffer append(long n) throws IOException {
+        if (count + 20 > buf.length) drain();
+        if (n < 0) {
+            if (n == Long.MIN_VALUE) return append(Long.toString(n));
+            buf[count++] = '-';
+            n = -n;
+        }
+        int end = count + digits(n);
+        for (int p = end - 1; p >= count; p--) {
+            buf[p] = (byte) ('0' + (n % 10));
+            n /= 10;
+        }
+        count = end;
+        return this;
+    }
+
+    public OutputBuffer pad(int spaces) throws IOException {
+        for (int n = 0; n < spaces; n++) {
+            if (count == buf.length) drain();
+            buf[count++] = ' ';
+        }
+        return this;
+    }
+
+    public OutputBuffer newline() throws IOException {
+        append('\n');
+        if (lineFlush) drain();
+        return this;
+    }
+
+      // for results that trickle in, like a long Find: a terminal gets each line when it ends,
+      // and whatever is buffered is flushed at least every LATENCY ms by a daemon thread.  that
+      // thread flushes under the buffer's monitor, so from now on every appender must hold it.
+    public void stream() {
+        lineFlush = System.console() != null;
+        Thread flusher = new Thread(() -> {
+            try {
+                while (true) {
+                    Thread.sleep(LATENCY);
+                    flush();
+                }
+            } catch (InterruptedException | IOException e) { }
+        }, "OutputBuffer");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+      // big-endian binary, like DataOutputStream
+    public OutputBuffer writeInt(int n) throws IOException {
+        if (count + 4 > buf.length) drain();
+        buf[count++] = (byte) (n >>> 24);
+        buf[count++] = (byte) (n >>> 16);
+        buf[count++] = (byte) (n >>> 8);
+        buf[count++] = (byte) n;
+        return this;
+    }
+
+    public OutputBuffer writeLong(long n) throws IOException {
+        writeInt((int) (n >>> 32));
+        return writeInt((int) n);
+    }
+
+      // the number of bytes append(s) writes
+    public static int utf8Length(String s) {
+        int length = s.length();
+        int bytes = length;
+        for (int n = 0; n < length; n++) {
+            char c = s.charAt(n);
+            if (c < 0x80) continue;
+            if (c < 0x800) bytes++;
+            else if (Character.isHighSurrogate(c) && n + 1 < length && Character.isLowSurrogate(s.charAt(n + 1))) { bytes += 2; n++; }
+            else if (!Character.isSurrogate(c)) bytes += 2;     // an unpaired one is written as '?'
+        }
+        return bytes;
+    }
+
+      // number of decimal digits in n >= 0
+    public static int digits(long n) {
+        int d = 1;
+        while (n >= 10) { n /= 10; d++; }
+        return d;
+    }
+
+    public synchronized void write(int b) throws IOException {
+        if (count == buf.length) drain();
+        buf[count++] = (byte) b;
+    }
+
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        if (len >= buf.length) {
+            drain();
+            long t = Metrics.start();
+            out.write(b, off, len);
+            Metrics.stop(Metrics.OUTPUT, t);
+            Metrics.add(Metrics.BYTES, len);
+            return;
+        }
+        if (count + len > buf.length) drain();
+        System.arraycopy(b, off, buf, count, len);
+        count += len;
+    }
+
+    public synchronized void flush() throws IOException {
+        drain();
+        out.flush();
+    }
+
+    public synchronized void close() throws IOException {
+        flush();
+        out.close();
+    }
+
+    private final OutputStream out;
+    private final byte[] buf;
+    private int count;
+    private boolean lineFlush;
+
+    private void drain() throws IOException {
+        if (count == 0) return;
+        long t = Metrics.start();
+        out.write(buf, 0, count);
+        Metrics.stop(Metrics.OUTPUT, t);
+        Metrics.add(Metrics.BYTES, count);
+        count = 0;
+    }
+
+    private OutputBuffer appendCodePoint(int cp) throws IOException {
+        if (count + 4 > buf.length) drain();
+        if (cp < 0x10000 && Character.isSurrogate((char) cp)) {    // unpaired, as utf8Length counts it
+            buf[count++] = '?';
+            return this;
+        }
+        if (cp < 0x800) {
+            buf[count++] = (byte) (0xc0 | (cp >> 6));
+        } else if (cp < 0x10000) {
+            buf[count++] = (byte) (0xe0 | (cp >> 12));
+            buf[count++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+        } else {
+            buf[count++] = (byte) (0xf0 | (cp >> 18));
+            buf[count++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+            buf[count++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+        }
+        buf[count++] = (byte) (0x80 | (cp & 0x3f));
+        return this;
+    }
+}
@@ -0,0 +1,374 @@
+package cli;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+  // FileList and Find results for other programs to read, instead of the listing meant for
+  // people: no padding, colors or dates, and any name comes through intact.  two formats:
+  //
+  //   NDJSON   one JSON object per line, e.g.
+  //            {"path":"/etc/passwd","type":"f","link":false,"size":1398,"mtime":1700000000000,"mode":420,"owner":"root","group":"root"}
+  //            mtime is in milliseconds since the epoch, mode holds the permission bits (-1 if
+  //            unknown).  control characters, quotes and backslashes in strings are escaped,
+  //            so a newline in a name can't break a line.
+  //   BINARY   MAGIC and VERSION, then per entry the length of the rest of the record, type and
+  //            link as one byte each, size, mtime, mode, and then path, owner and group, each
+  //            as a length and its UTF-8 bytes.  big-endian, like DataOutputStream.
+  //
+  // both are written field by field into the OutputBuffer, without building a String per
+  // record, and read back by Reader, which tells them apart by the magic number.
+  //
+  // names are Java Strings by the time they get here: a name that isn't valid in the file
+  // system's encoding has already been decoded with replacement characters, so it can't be
+  // written back exactly.
+public class Records {
+
+    public static final int MAGIC = 0x464c5242;     // "FLRB"
+    public static final int VERSION = 1;
+
+      // once at the start of a BINARY stream
+    public static void header(OutputBuffer out) throws IOException {
+        out.writeInt(MAGIC).writeInt(VERSION);
+    }
+
+    public static void writeJson(FileEntry e, OutputBuffer out) throws IOException {
+        writeJson(e.path().toString(), e.type(), e.isSymbolicLink(), e.size(), e.lastModified(), e.mode(), e.owner(), e.group(), out);
+    }
+
+    public static void writeBinary(FileEntry e, OutputBuffer out) throws IOException {
+        writeBinary(e.path().toString(), e.type(), e.isSymbolicLink(), e.size(), e.lastModified(), e.mode(), e.owner(), e.group(), out);
+    }
+
+    public static void writeJson(Record r, OutputBuffer out) throws IOException {
+        writeJson(r.path, r.type, r.link, r.size, r.mtime, r.mode, r.owner, r.group, out);
+    }
+
+    public static void writeBinary(Record r, OutputBuffer out) throws IOException {
+        writeBinary(r.path, r.type, r.link, r.size, r.mtime, r.mode, r.owner, r.group, out);
+    }
+
+      // one entry, as Reader returns it
+    public static final class Record {
+        private final String path;
+        private final char type;
+        private final boolean link;
+        private final long size;
+        private final long mtime;
+        private final int mode;
+        private final String owner;
+        private final String group;
+
+        Record(String path, char type, boolean link, long size, long mtime, int mode, String owner, String group) {
+            this.path = path;
+            this.type = type;
+            this.link = link;
+            this.size = size;
+            this.mtime = mtime;
+            this.mode = mode;
+            this.owner = owner;
+            this.group = group;
+        }
+
+        public String path()            { return path; }
+        public char type()              { return type; }
+        public boolean isSymbolicLink() { return link; }
+        public long size()              { return size; }
+        public long lastModified()      { return mtime; }
+        public int mode()               { return mode; }
+        public String owner()           { return owner; }
+        public String group()           { return group; }
+    }
+
+      // reads either format, as written here.  for NDJSON that is one object per line with
+      // string, number and boolean values; keys it doesn't know are skipped.  the input is read
+      // a block at a time and parsed in place: keys and numbers never become Strings.
+    public static final class Reader implements Closeable {
+        private final InputStream in;
+        private final boolean binary;
+        private final byte[] buf = new byte[1 << 16];
+        private int pos;
+        private int limit;
+        private byte[] text = new byte[256];    // a string being decoded
+        private int length;
+
+        public Reader(InputStream in) throws IOException {
+            this.in = in;
+            while (limit < 8 && fill()) { }
+            binary = limit >= 8 && readInt() == MAGIC;
+            if (binary) {
+                int version = readInt();
+                if (version != VERSION) throw new IOException("unsupported record version " + version);
+            } else pos = 0;
+        }
+
+          // the next record, or null at the end
+        public Record next() throws IOException {
+            return binary ? nextBinary() : nextJson();
+        }
+
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private Record nextBinary() throws IOException {
+            if (pos == limit && !fill()) return null;
+            readInt();      // the length, for readers that skip records
+            char type = (char) byteValue();
+            boolean link = byteValue() != 0;
+            long bytes = readLong();
+            long mtime = readLong();
+            int mode = readInt();
+            return new Record(string(), type, link, bytes, mtime, mode, string(), string());
+        }
+
+        private String string() throws IOException {
+            int n = readInt();
+            if (n < 0) throw new IOException("bad record: negative length");
+            if (n > text.length) text = new byte[Math.max(n, text.length * 2)];
+            for (int done = 0; done < n; ) {
+                if (pos == limit && !fill()) throw new EOFException("truncated record");
+                int k = Math.min(n - done, limit - pos);
+                System.arraycopy(buf, pos, text, done, k);
+                pos += k;
+                done += k;
+            }
+            return new String(text, 0, n, StandardCharsets.UTF_8);
+        }
+
+        private int byteValue() throws IOException {
+            int c = read();
+            if (c == -1) throw new EOFException("truncated record");
+            return c;
+        }
+
+        private int readInt() throws IOException {
+            return (byteValue() << 24) | (byteValue() << 16) | (byteValue() << 8) | byteValue();
+        }
+
+        private long readLong() throws IOException {
+            return ((long) readInt() << 32) | (readInt() & 0xffffffffL);
+        }
+
+        private Record nextJson() throws IOException {
+            int c = skipSpace();
+            if (c == -1) return null;
+            expect(c, '{');
+            String path = "", owner = "", group = "";
+            char type = '?';
+            boolean link = false;
+            long size = -1, mtime = 0;
+            int mode = -1;
+            c = skipSpace();
+            while (c != '}') {
+                expect(c, '"');
+                jsonString();
+                expect(skipSpace(), ':');
+                if (is("path"))       path = value();
+                else if (is("type"))  { String t = value(); type = t.isEmpty() ? '?' : t.charAt(0); }
+                else if (is("link"))  link = value().equals("true");
+                else if (is("size"))  size = number();
+                else if (is("mtime")) mtime = number();
+                else if (is("mode"))  mode = (int) number();
+                else if (is("owner")) owner = value();
+                else if (is("group")) group = value();
+                else value();
+                c = skipSpace();
+                if (c == ',') c = skipSpace();
+                else if (c != '}') throw new IOException("bad record: expected ',' or '}'");
+            }
+            return new Record(path, type, link, size, mtime, mode, owner, group);
+        }
+
+          // a string, or the text of a number or literal
+        private String value() throws IOException {
+            int c = skipSpace();
+            if (c == '"') {
+                jsonString();
+                return new String(text, 0, length, StandardCharsets.UTF_8);
+            }
+            length = 0;
+            while (c != -1 && c != ',' && c != '}' && c > ' ') {
+                add(c);
+                c = read();
+            }
+            if (c != -1) pos--;     // not part of the value
+            return new String(text, 0, length, StandardCharsets.ISO_8859_1);
+        }
+
+          // the rest of a string whose opening quote has been read, as UTF-8 into text.  runs
+          // without escapes are copied straight from the buffer.
+        private void jsonString() throws IOException {
+            length = 0;
+            while (true) {
+                if (pos == limit && !fill()) throw new EOFException("unterminated string");
+                int from = pos;
+                while (pos < limit && buf[pos] != '"' && buf[pos] != '\\') pos++;
+                if (length + pos - from > text.length) text = Arrays.copyOf(text, Math.max(text.length * 2, length + pos - from));
+                System.arraycopy(buf, from, text, length, pos - from);
+                length += pos - from;
+                if (pos == limit) continue;
+                if (buf[pos++] == '"') return;
+                int c = read();
+                switch (c) {
+                    case 'n': add('\n'); break;
+                    case 't': add('\t'); break;
+                    case 'r': add('\r'); break;
+                    case 'b': add('\b'); break;
+                    case 'f': add('\f'); break;
+                    case 'u':
+                        int cp = hex4();
+                        if (Character.isHighSurrogate((char) cp)) {
+                            if (read() != '\\' || read() != 'u') throw new IOException("bad record: unpaired surrogate");
+                            cp = Character.toCodePoint((char) cp, (char) hex4());
+                        }
+                        addCodePoint(cp);
+                        break;
+                    case -1:  throw new EOFException("unterminated string");
+                    default:  add(c);       // " \ /
+                }
+            }
+        }
+
+          // whether the string just read is key
+        private boolean is(String key) {
+            if (length != key.length()) return false;
+            for (int n = 0; n < length; n++) if (text[n] != key.charAt(n)) return false;
+            return true;
+        }
+
+        private int hex4() throws IOException {
+            int v = 0;
+            for (int n = 0; n < 4; n++) {
+                int d = Character.digit(read(), 16);
+                if (d < 0) throw new IOException("bad record: invalid \\u escape");
+                v = v * 16 + d;
+            }
+            return v;
+        }
+
+        private void add(int b) {
+            if (length == text.length) text = Arrays.copyOf(text, length * 2);
+            text[length++] = (byte) b;
+        }
+
+        private void addCodePoint(int cp) {
+            byte[] b = new String(Character.toChars(cp)).getBytes(StandardCharsets.UTF_8);
+            for (byte x : b) add(x);
+        }
+
+          // an integer, parsed straight from the input
+        private long number() throws IOException {
+            int c = skipSpace();
+            boolean negative = c == '-';
+            if (negative) c = read();
+            if (c < '0' || c > '9') throw new IOException("bad record: invalid number");
+            long n = 0;
+            for (; c >= '0' && c <= '9'; c = read()) n = n * 10 + (c - '0');
+            if (c != -1) pos--;     // not part of the number
+            return negative ? -n : n;
+        }
+
+        private static void expect(int c, char wanted) throws IOException {
+            if (c != wanted) throw new IOException("bad record: expected '" + wanted + "'");
+        }
+
+        private int skipSpace() throws IOException {
+            int c = read();
+            while (c == ' ' || c == '\n' || c == '\r' || c == '\t') c = read();
+            return c;
+        }
+
+        private int read() throws IOException {
+            if (pos == limit && !fill()) return -1;
+            return buf[pos++] & 0xff;
+        }
+
+          // more input after what has been parsed; false at the end.  the constructor's look at
+          // the magic number is the only time bytes are kept.
+        private boolean fill() throws IOException {
+            if (pos == limit) pos = limit = 0;
+            int n = in.read(buf, limit, buf.length - limit);
+            if (n <= 0) return false;
+            limit += n;
+            return true;
+        }
+    }
+
+      // usage: Records [--binary] [FILE]
+      // reads records in either format from FILE or stdin and writes them as NDJSON, or with
+      // --binary as BINARY, e.g. to check or convert the output of FileList and Find.
+    public static void main(String ... args) throws IOException {
+        boolean binary = args.length > 0 && args[0].equals("--binary");
+        int first = binary ? 1 : 0;
+        InputStream input = (args.length > first) ? new FileInputStream(args[first]) : new FileInputStream(FileDescriptor.in);
+        OutputBuffer out = new OutputBuffer(new FileOutputStream(FileDescriptor.out));
+        try (Reader in = new Reader(input)) {
+            if (binary) header(out);
+            for (Record r = in.next(); r != null; r = in.next()) {
+                if (binary) writeBinary(r, out);
+                else writeJson(r, out);
+            }
+        } finally { out.flush(); }
+    }
+
+    private static final String HEX = "0123456789abcdef";
+
+    private static void writeJson(String path, char type, boolean link, long size, long mtime, int mode,
+                                  String owner, String group, OutputBuffer out) throws IOException {
+        out.append("{\"path\":");
+        string(path, out);
+        out.append(",\"type\":");
+        string(String.valueOf(type), out);
+        out.append(",\"link\":").append(link ? "true" : "false");
+        out.append(",\"size\":").append(size);
+        out.append(",\"mtime\":").append(mtime);
+        out.append(",\"mode\":").append(mode);
+        out.append(",\"owner\":");
+        string(owner, out);
+        out.append(",\"group\":");
+        string(group, out);
+        out.append('}').newline();
+    }
+
+    private static void string(String s, OutputBuffer out) throws IOException {
+        out.append('"');
+        int from = 0;
+        int length = s.length();
+        for (int n = 0; n < length; n++) {
+            char c = s.charAt(n);
+            if (c >= ' ' && c != '"' && c != '\\') continue;
+            out.append(s, from, n);
+            from = n + 1;
+            switch (c) {
+                case '"':  out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\t': out.append("\\t"); break;
+                case '\r': out.append("\\r"); break;
+                default:   out.append("\\u00").append(HEX.charAt(c >> 4)).append(HEX.charAt(c & 15));
+            }
+        }
+        out.append(s, from, length).append('"');
+    }
+
+    private static void writeBinary(String path, char type, boolean link, long size, long mtime, int mode,
+                                    String owner, String group, OutputBuffer out) throws IOException {
+        int p = OutputBuffer.utf8Length(path);
+        int o = OutputBuffer.utf8Length(owner);
+        int g = OutputBuffer.utf8Length(group);
+        out.writeInt(1 + 1 + 8 + 8 + 4 + 4 + p + 4 + o + 4 + g);
+        out.write(type);
+        out.write(link ? 1 : 0);
+        out.writeLong(size).writeLong(mtime).writeInt(mode);
+        out.writeInt(p).append(path);
+        out.writeInt(o).append(owner);
+        out.writeInt(g).append(group);
+    }
+}
@@ -0,0 +1,362 @@
+package cli;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+  // a tree as it was at one point, for finding out later what changed in it.  a snapshot is
+  // every entry under a root, depth first with each directory's entries sorted by name, each
+  // with its depth, name, size, mtime, inode and device.  links aren't followed.
+  //
+  // a diff walks two trees in that same order and merges them, like comm(1): only the entries
+  // on the path down to the current one are held, never either tree, so two snapshots of any
+  // size are compared in a single pass over each file.  the other side can also be the live
+  // tree.  then a directory whose mtime, inode and device match the snapshot's has the same
+  // entries as before, so it isn't read again: its entries are taken from the snapshot and
+  // only stat'ed, to see if they were modified.  a diff can save the live side as the next
+  // snapshot as it goes.
+  //
+  // changes are printed one per line: '+' added, '-' removed, 'M' modified (another size,
+  // mtime, inode or device; for directories, another inode or device), then the path.  a
+  // directory that is added or removed is followed by everything in it.  an entry that changed
+  // type is removed and added.  the contents of a directory that can't be read now are left
+  // out; those of one that couldn't be read before, but can now, are added.
+public class Snapshot {
+
+    private static final int MAGIC   = 0x464c534e;  // "FLSN"
+    private static final int VERSION = 2;
+    private static final int END     = 0xffff;      // depth marking the end
+
+    private static final int DIRECTORY  = 1;         // entry flags
+    private static final int LINK       = 2;
+    private static final int UNREADABLE = 4;
+
+      // write a snapshot of the tree under root to file.  the new snapshot is written next to
+      // the file and moved into place when complete.
+    public static void write(String root, NameMatcher prune, Path file) throws IOException {
+        new Snapshot(prune, null).live(null, root, file);
+    }
+
+      // print what changed between two snapshots of the same tree
+    public static void diff(Path older, Path newer, OutputBuffer out) throws IOException {
+        try (Cursor a = new Cursor(older); Cursor b = new Cursor(newer)) {
+            Snapshot s = new Snapshot(null, out);
+            Entry x = a.next(), y = b.next();
+            if (x == null || y == null) throw new IOException("empty snapshot");
+            s.pair(b.root, x, y, a, b);
+        }
+    }
+
+      // print what changed in the tree under root since the snapshot older was taken, and if
+      // save isn't null, write the tree as it is now there
+    public static void diff(Path older, String root, NameMatcher prune, Path save, OutputBuffer out) throws IOException {
+        try (Cursor a = new Cursor(older)) {
+            new Snapshot(prune, out).live(a, root, save);
+        }
+    }
+
+    private final NameMatcher prune;
+    private final OutputBuffer out;         // null: don't report
+    private DataOutputStream saved;         // the snapshot being written, or null
+
+    private Snapshot(NameMatcher prune, OutputBuffer out) {
+        this.prune = prune;
+        this.out = out;
+    }
+
+    private static final class Entry {
+        final int depth;
+        final String name;
+        final long size;
+        final long mtime;
+        final long inode;
+        final long device;
+        int flags;
+
+        Entry(int depth, String name, int flags, long size, long mtime, long inode, long device) {
+            this.depth = depth;
+            this.name = name;
+            this.flags = flags;
+            this.size = size;
+            this.mtime = mtime;
+            this.inode = inode;
+            this.device = device;
+        }
+
+        boolean isDirectory() { return (flags & DIRECTORY) != 0; }
+        boolean isReadable()  { return (flags & UNREADABLE) == 0; }
+
+        boolean sameType(Entry e) {
+            return ((flags ^ e.flags) & (DIRECTORY | LINK)) == 0;
+        }
+
+        boolean sameFile(Entry e) {
+            return inode == e.inode && device == e.device;
+        }
+
+          // a directory's size and mtime change with its entries, which are compared anyway
+        boolean modified(Entry e) {
+            if (!sameFile(e)) return true;
+            return !isDirectory() && (size != e.size || mtime != e.mtime);
+        }
+    }
+
+      // reads a snapshot one entry at a time, with one entry of lookahead
+    private static final class Cursor implements AutoCloseable {
+        final DataInputStream in;
+        final String root;
+        Entry peeked;
+
+        Cursor(Path file) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                in.close();
+                throw new IOException("not a snapshot: " + file);
+            }
+            root = in.readUTF();
+            peeked = read();
+        }
+
+        Entry next() throws IOException {
+            Entry e = peeked;
+            if (e != null) peeked = read();
+            return e;
+        }
+
+          // the next entry if it is in the directory at depth, else null
+        Entry child(int depth) {
+            return (peeked != null && peeked.depth == depth + 1) ? peeked : null;
+        }
+
+          // past everything below the directory at depth
+        void skip(int depth) throws IOException {
+            while (peeked != null && peeked.depth > depth) next();
+        }
+
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private Entry read() throws IOException {
+            int depth = in.readUnsignedShort();
+            if (depth == END) return null;
+            String name = in.readUTF();
+            int flags = in.readUnsignedByte();
+            return new Entry(depth, name, flags, in.readLong(), in.readLong(), in.readLong(), in.readLong());
+        }
+    }
+
+      // the live tree under root against the snapshot old (or nothing, when only saving)
+    private void live(Cursor old, String root, Path save) throws IOException {
+        Path rootPath = Paths.get(root);
+        Path tmp = null;
+        if (save != null) {
+            tmp = save.resolveSibling(save.getFileName() + ".tmp");
+            saved = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16));
+            saved.writeInt(MAGIC);
+            saved.writeInt(VERSION);
+            saved.writeUTF(root);
+        }
+        try {
+            Entry x = (old == null) ? null : old.next();
+            Entry y = stat(rootPath, 0);
+            if (y == null) throw new NoSuchFileException(root);
+            pair(root, rootPath, x, y, old);
+            if (saved != null) saved.writeShort(END);
+        } finally {
+            if (saved != null) saved.close();
+        }
+        if (tmp != null) Files.move(tmp, save, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+      // the same name in the snapshot (x) and the live tree (y), either of which may be missing.
+      // old is positioned after x, at its entries.  y is saved here.
+    private void pair(String path, Path p, Entry x, Entry y, Cursor old) throws IOException {
+        if (y == null) { removed(path, x, old); return; }
+        if (x != null && !x.sameType(y)) {
+            removed(path, x, old);
+            x = null;
+        }
+        List<String> names = null;
+          // the same directory, not one put in its place with the same mtime
+        boolean unchanged = x != null && x.isDirectory() && x.isReadable() && x.mtime == y.mtime && x.sameFile(y);
+        if (y.isDirectory() && !unchanged) {
+            names = list(p);
+            if (names == null) y.flags |= UNREADABLE;
+        }
+        save(y);
+        if (x == null) report('+', path, y);
+        else if (x.modified(y)) report('M', path, y);
+        if (!y.isDirectory()) return;
+        Metrics.increment(Metrics.DIRECTORIES);
+        if (x != null && (!x.isReadable() || !y.isReadable())) {
+            old.skip(x.depth);
+            if (!y.isReadable()) return;
+            x = null;       // nothing to compare with, everything in it is new
+        }
+        int depth = y.depth;
+        if (unchanged) {
+              // same entries as when the snapshot was taken: stat them, but don't read the directory
+            Entry c;
+            int entries = 0;
+            while ((c = old.child(depth)) != null) {
+                old.next();
+                entries++;
+                Path cp = p.resolve(c.name);
+                if (pruned(c, cp)) { old.skip(c.depth); continue; }
+                pair(join(path, c.name), cp, c, stat(cp, depth + 1), old);
+            }
+            Metrics.add(Metrics.ENTRIES, entries);
+            return;
+        }
+        if (names == null) return;
+        Metrics.add(Metrics.ENTRIES, names.size());
+        int i = 0;
+        while (true) {
+            Entry c = (x == null) ? null : old.child(depth);
+            String live = (i < names.size()) ? names.get(i) : null;
+            if (c == null && live == null) return;
+            int cmp = (c == null) ? 1 : (live == null) ? -1 : c.name.compareTo(live);
+            String name = (cmp <= 0) ? c.name : live;
+            Path cp = p.resolve(name);
+            if (cmp <= 0) old.next();
+            Entry now = null;
+            if (cmp >= 0) {
+                i++;
+                now = stat(cp, depth + 1);
+            }
+            Entry was = (cmp <= 0) ? c : null;
+            if (pruned(was != null ? was : now, cp)) {
+                if (was != null) old.skip(was.depth);
+                continue;
+            }
+            if (was == null && now == null) continue;     // listed, then gone
+            pair(join(path, name), cp, was, now, (was == null) ? null : old);
+        }
+    }
+
+      // the same name in two snapshots, either of which may be missing.  a and b are positioned
+      // after x and y, at their entries.
+    private void pair(String path, Entry x, Entry y, Cursor a, Cursor b) throws IOException {
+        if (y == null) { removed(path, x, a); return; }
+        if (x == null) { added(path, y, b); return; }
+        if (!x.sameType(y)) {
+            removed(path, x, a);
+            added(path, y, b);
+            return;
+        }
+        if (x.modified(y)) report('M', path, y);
+        if (!x.isDirectory()) return;
+        if (!y.isReadable()) {
+            a.skip(x.depth);
+            b.skip(y.depth);
+            return;
+        }
+        if (!x.isReadable()) {
+            Entry d;
+            while ((d = b.child(y.depth)) != null) {
+                b.next();
+                added(join(path, d.name), d, b);
+            }
+            return;
+        }
+        while (true) {
+            Entry c = a.child(x.depth), d = b.child(y.depth);
+            if (c == null && d == null) return;
+            int cmp = (c == null) ? 1 : (d == null) ? -1 : c.name.compareTo(d.name);
+            if (cmp <= 0) a.next();
+            if (cmp >= 0) b.next();
+            pair(join(path, (cmp <= 0) ? c.name : d.name), (cmp <= 0) ? c : null, (cmp >= 0) ? d : null, a, b);
+        }
+    }
+
+      // x and everything below it, which old is positioned at
+    private void removed(String path, Entry x, Cursor old) throws IOException {
+        report('-', path, x);
+        Entry c;
+        while ((c = old.child(x.depth)) != null) {
+            old.next();
+            removed(join(path, c.name), c, old);
+        }
+    }
+
+    private void added(String path, Entry y, Cursor b) throws IOException {
+        report('+', path, y);
+        Entry c;
+        while ((c = b.child(y.depth)) != null) {
+            b.next();
+            added(join(path, c.name), c, b);
+        }
+    }
+
+      // the names in a directory, sorted, or null if it can't be read
+    private static List<String> list(Path dir) {
+        List<String> names = new ArrayList<String>();
+        long t = Metrics.start();
+        try (DirectoryStream<Path> contents = Files.newDirectoryStream(dir)) {
+            for (Path p : contents) names.add(p.getFileName().toString());
+        } catch (IOException e) {
+            String why = (e instanceof AccessDeniedException) ? "permission denied" : e.toString();
+            System.out.println("Find: Error: cannot read " + dir + ": " + why);
+            Metrics.error(e);
+            return null;
+        } finally { Metrics.stop(Metrics.READ, t); }
+        Collections.sort(names);
+        return names;
+    }
+
+      // the entry at p as it is now, or null if it is gone or can't be stat'ed
+    private static Entry stat(Path p, int depth) {
+        FileEntry e;
+        try { e = FileEntry.lstat(p); }
+        catch (NoSuchFileException x) { return null; }
+        catch (IOException x) {
+            System.out.println("Find: Error: cannot stat " + p + ": " + x.toString());
+            Metrics.error(x);
+            return null;
+        }
+        Path name = p.getFileName();
+        int flags = (e.isDirectory() ? DIRECTORY : 0) | (e.isSymbolicLink() ? LINK : 0);
+        return new Entry(depth, (depth == 0 || name == null) ? "" : name.toString(), flags, e.size(), e.lastModified(), e.inode(), e.device());
+    }
+
+    private boolean pruned(Entry e, Path p) {
+        if (prune == null || e == null || !e.isDirectory() || !prune.matches(e.name, p)) return false;
+        Metrics.increment(Metrics.PRUNED);
+        return true;
+    }
+
+    private void save(Entry e) throws IOException {
+        if (saved == null) return;
+        saved.writeShort(e.depth);
+        saved.writeUTF(e.name);
+        saved.writeByte(e.flags);
+        saved.writeLong(e.size);
+        saved.writeLong(e.mtime);
+        saved.writeLong(e.inode);
+        saved.writeLong(e.device);
+    }
+
+    private void report(char kind, String path, Entry e) throws IOException {
+        if (out == null) return;
+        out.append(kind).append(' ').append(path);
+        if (e.isDirectory() && !path.endsWith("/")) out.append('/');
+        out.newline();
+    }
+
+    private static String join(String dir, String name) {
+        return dir.endsWith("/") ? dir + name : dir + "/" + name;
+    }
+}
@@ -0,0 +1,63 @@
+package cli;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+  // the first k entries of a ranking, e.g. the 100 largest files under a mount, without holding
+  // on to the rest.  a heap keeps the k best seen so far with the worst of them on top, so each
+  // offer is O(log k) and memory is O(k) however many entries go by.  the ranking is FileList's
+  // sort order for the given options: BYSIZE, BYTIME or both, then the name.
+  //
+  // a file that is offered more than once, through a link to a directory, a hard link or a bind
+  // mount, is only kept once, by whichever of its paths ranks best: a better copy takes the
+  // place of the one kept.  so the result is that of sorting everything and then dropping the
+  // later copies of each file, and it takes no more than the heap.  a copy that was dropped, or
+  // turned away, ranks below all k kept files, and they are only ever replaced by better ones.
+  //
+  // offer() is synchronized, so a parallel Find can feed it directly.
+public class TopK {
+
+    public TopK(int k, int options) {
+        if (k < 1) throw new IllegalArgumentException("k must be at least 1");
+        this.k = k;
+        this.order = FileSort.order(FileList.sortKeys(options));
+        this.heap = new PriorityQueue<FileEntry>(Math.min(k, 1 << 16) + 1, order.reversed());
+    }
+
+      // true if e is among the best k so far
+    public synchronized boolean offer(FileEntry e) {
+        if (heap.size() == k && order.compare(e, heap.peek()) >= 0) return false;
+        Object id = identity(e);
+        FileEntry copy = kept.get(id);
+        if (copy != null) {
+            if (order.compare(e, copy) >= 0) return false;
+            heap.remove(copy);          // O(k), but only for a better copy of a kept file
+        } else if (heap.size() == k) kept.remove(identity(heap.poll()));
+        kept.put(id, e);
+        return heap.add(e);
+    }
+
+      // the entries kept, best first
+    public synchronized List<FileEntry> ranked() {
+        List<FileEntry> out = new ArrayList<FileEntry>(heap);
+        Collections.sort(out, order);
+        return out;
+    }
+
+    private final int k;
+    private final Comparator<FileEntry> order;
+    private final PriorityQueue<FileEntry> heap;
+    private final Map<Object, FileEntry> kept = new HashMap<Object, FileEntry>();   // by identity
+
+      // device and inode if they were read, else the path
+    private static Object identity(FileEntry e) {
+        if (e.inode() == 0) return e.path();
+        return Arrays.asList(e.device(), e.inode());
+    }
+}
@@ -0,0 +1,253 @@
+package cli;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+  // resident cache of directory listings, for services that call FileList.of and Find.in over
+  // the same trees again and again.  watch(root) fills it with one traversal, and a WatchService
+  // keeps every cached directory current.  events that were lost (OVERFLOW) drop the listing,
+  // and a periodic rescan drops any listing whose directory mtime no longer matches, so nothing
+  // stale is served for longer than the rescan interval.
+  //
+  // memory is bounded by the total number of cached entries; when it is exceeded the least
+  // recently listed directories are evicted and their watches cancelled.  directories under a
+  // watched root that aren't cached are read from disk and cached on first use.
+  //
+  // a change inside a directory also changes the directory's own mtime and size, which no event
+  // reports to its parent, so the directory's entry in its parent's listing is re-read with it.
+public class TreeCache implements AutoCloseable {
+
+    private static volatile TreeCache installed;
+
+      // serve FileList.of and Find.in from this cache (or from disk again, with null)
+    public static void install(TreeCache cache) {
+        installed = cache;
+    }
+
+      // the listing of dir from the installed cache, or null if there is no cache or dir
+      // isn't under one of its roots
+    static List<FileEntry> lookup(Path dir) {
+        TreeCache cache = installed;
+        if (cache == null) return null;
+        try { return cache.list(dir); }
+        catch (IOException e) { return null; }
+    }
+
+      // the listing of dir, from the installed cache if it covers dir, else from disk
+    static List<FileEntry> read(Path dir) throws IOException {
+        List<FileEntry> cached = lookup(dir);
+        return (cached != null) ? cached : readDisk(dir);
+    }
+
+    public TreeCache(int maxEntries, long rescanMillis) throws IOException {
+        this.maxEntries = maxEntries;
+        this.rescanMillis = rescanMillis;
+        this.watcher = FileSystems.getDefault().newWatchService();
+        this.listings = new LinkedHashMap<Path, Listing>();
+        this.byKey = new HashMap<WatchKey, Listing>();
+        this.roots = new ArrayList<Path>();
+        this.thread = new Thread(this::watchLoop, "TreeCache");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+      // cache the tree under root, as far as the entry budget allows
+    public void watch(Path root) throws IOException {
+        root = root.toAbsolutePath().normalize();
+        synchronized (this) { roots.add(root); }
+        List<Path> dirQ = new ArrayList<Path>();
+        dirQ.add(root);
+        for (int i = 0; i < dirQ.size() && size() < maxEntries; i++) {
+            List<FileEntry> contents = list(dirQ.get(i));
+            if (contents == null) continue;
+            for (FileEntry e : contents) if (e.isDirectory()) dirQ.add(e.path());
+        }
+    }
+
+      // the entries of dir, or null if dir isn't under a watched root
+    public List<FileEntry> list(Path dir) throws IOException {
+        dir = dir.toAbsolutePath().normalize();
+        synchronized (this) {
+            if (!isCovered(dir)) return null;
+            Listing l = listings.remove(dir);
+            if (l != null) {
+                listings.put(dir, l);       // now the most recently used
+                hits.incrementAndGet();
+                return new ArrayList<FileEntry>(l.entries.values());
+            }
+        }
+        misses.incrementAndGet();
+        long mtime = Files.getLastModifiedTime(dir).toMillis();
+        List<FileEntry> contents = readDisk(dir);
+        WatchKey key;
+        try { key = dir.register(watcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY); }
+        catch (IOException e) { return contents; }  // out of watches: serve it, but don't cache it
+        synchronized (this) {
+            Listing l = new Listing(dir, key, mtime);
+            for (FileEntry e : contents) l.entries.put(e.name(), e);
+            Listing previous = listings.put(dir, l);
+            if (previous != null) count -= previous.entries.size();
+            byKey.put(key, l);
+            count += contents.size();
+            evict();
+        }
+        return contents;
+    }
+
+    public long hits()   { return hits.get(); }
+    public long misses() { return misses.get(); }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    public void close() throws IOException {
+        thread.interrupt();
+        watcher.close();
+        synchronized (this) {
+            listings.clear();
+            byKey.clear();
+            count = 0;
+        }
+    }
+
+    private final int maxEntries;
+    private final long rescanMillis;
+    private final WatchService watcher;
+    private final LinkedHashMap<Path, Listing> listings;   // least recently used first; only list() reorders it
+    private final Map<WatchKey, Listing> byKey;
+    private final List<Path> roots;
+    private final Thread thread;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private int count;
+
+    private static final class Listing {
+        final Path dir;
+        final WatchKey key;
+        final Map<String, FileEntry> entries = new HashMap<String, FileEntry>();
+        long mtime;
+
+        Listing(Path dir, WatchKey key, long mtime) {
+            this.dir = dir;
+            this.key = key;
+            this.mtime = mtime;
+        }
+    }
+
+    private static List<FileEntry> readDisk(Path dir) throws IOException {
+        List<FileEntry> contents = new ArrayList<FileEntry>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+            for (Path p : ds) {
+                try { contents.add(FileEntry.of(p)); }
+                catch (IOException e) { Metrics.error(e); }  // vanished, or a dangling link
+            }
+        }
+        return contents;
+    }
+
+    private boolean isCovered(Path dir) {
+        for (Path root : roots) if (dir.startsWith(root)) return true;
+        return false;
+    }
+
+    private void evict() {
+        Iterator<Listing> it = listings.values().iterator();
+        while (count > maxEntries && it.hasNext()) {
+            Listing l = it.next();
+            it.remove();
+            drop(l);
+        }
+    }
+
+      // forget a listing that has already been removed from listings
+    private void drop(Listing l) {
+        l.key.cancel();
+        byKey.remove(l.key);
+        count -= l.entries.size();
+    }
+
+    private synchronized void invalidate(Listing l) {
+        if (listings.get(l.dir) == l) {
+            listings.remove(l.dir);
+            drop(l);
+        }
+    }
+
+    private void watchLoop() {
+        long nextRescan = System.currentTimeMillis() + rescanMillis;
+        try {
+            while (true) {
+                WatchKey key = watcher.poll(Math.max(1, nextRescan - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                if (key != null) apply(key);
+                if (System.currentTimeMillis() >= nextRescan) {
+                    rescan();
+                    nextRescan = System.currentTimeMillis() + rescanMillis;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) { }
+    }
+
+    private void apply(WatchKey key) {
+        Listing l;
+        synchronized (this) { l = byKey.get(key); }
+        List<WatchEvent<?>> events = key.pollEvents();
+        if (l == null) return;
+        if (!key.reset()) { invalidate(l); return; }    // directory is gone
+          // the stats are done first, outside the lock; null for an entry that is gone
+        Map<String, FileEntry> changed = new HashMap<String, FileEntry>();
+        for (WatchEvent<?> event : events) {
+            if (event.kind() == OVERFLOW) { invalidate(l); return; }
+            Path name = (Path) event.context();
+            FileEntry e;
+            try { e = FileEntry.of(l.dir.resolve(name)); }
+            catch (IOException x) { e = null; }
+            changed.put(name.toString(), e);
+        }
+        FileEntry self;
+        try { self = FileEntry.of(l.dir); }
+        catch (IOException x) { invalidate(l); return; }
+          // then the listing, the count and the parent's entry change together, unless the
+          // listing was evicted meanwhile and its entries are no longer counted
+        synchronized (this) {
+            if (listings.get(l.dir) != l) return;
+            for (Map.Entry<String, FileEntry> c : changed.entrySet()) {
+                FileEntry e = c.getValue();
+                FileEntry previous = (e == null) ? l.entries.remove(c.getKey()) : l.entries.put(c.getKey(), e);
+                if (previous == null && e != null) count++;
+                if (previous != null && e == null) count--;
+            }
+            l.mtime = self.lastModified();
+            Path parent = l.dir.getParent();
+            Listing p = (parent == null) ? null : listings.get(parent);
+            String name = self.name();
+            if (p != null && p.entries.containsKey(name)) p.entries.put(name, self);
+        }
+    }
+
+      // the fallback for events the WatchService missed
+    private void rescan() {
+        List<Listing> cached;
+        synchronized (this) { cached = new ArrayList<Listing>(byKey.values()); }
+        for (Listing l : cached) {
+            try { if (Files.getLastModifiedTime(l.dir).toMillis() != l.mtime) invalidate(l); }
+            catch (IOException e) { invalidate(l); }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package cli.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+  // entry point of benchmarks.jar.  takes the usual JMH arguments, and always adds the gc
+  // profiler so every result comes with its allocation rate (gc.alloc.rate.norm is bytes per op).
+public class Bench {
+
+    public static void main(String ... args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        new Runner(new OptionsBuilder().parent(cmd).addProfiler(GCProfiler.class).build()).run();
+    }
+}
@@ -0,0 +1,77 @@
+package cli.bench;
+
+import cli.FileEntry;
+import cli.FileList;
+import cli.OutputBuffer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+  // FileList.of on one large directory, or on the whole deep tree with -R, and formatting
+  // of an already listed directory.  of() formats what it lists, since sorting is deferred
+  // until the entries are first read.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class FileListBench {
+
+    @Param({ "", "l", "S", "t", "R", "lR" })
+    public String options;
+
+    private Path flat;
+    private Path deep;
+    private int opts;
+    private FileList listing;
+    private OutputBuffer out;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        flat = Trees.create(Trees.flat());
+        deep = Trees.create(Trees.deep());
+        opts = Trees.options(options);
+        listing = FileList.of(flat.toString(), opts);
+        listing.format();   // sorts it, so the format benchmarks only measure formatting
+        out = new OutputBuffer(OutputStream.nullOutputStream());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        TreeGenerator.delete(flat);
+        TreeGenerator.delete(deep);
+    }
+
+    @Benchmark
+    public void of(Blackhole bh) throws IOException {
+        if ((opts & FileList.RECURSE) == 0) {
+            bh.consume(FileList.of(flat.toString(), opts).format());
+            return;
+        }
+          // breadth first like FileList.main, formatting each directory as it goes
+        List<String> dirQ = new ArrayList<String>();
+        dirQ.add(deep.toString());
+        for (int i = 0; i < dirQ.size(); i++) {
+            FileList fl = FileList.of(dirQ.get(i), opts);
+            for (FileEntry e : fl.entries()) if (e.isDirectory()) dirQ.add(e.path().toString());
+            bh.consume(fl.format());
+        }
+    }
+
+    @Benchmark
+    public List<String> format() throws IOException {
+        return listing.format();
+    }
+
+    @Benchmark
+    public void formatBuffered() throws IOException {
+        listing.format(out);
+        out.flush();
+    }
+}
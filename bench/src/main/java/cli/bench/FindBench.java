@@ -0,0 +1,85 @@
+package cli.bench;
+
+import cli.EntryTable;
+import cli.FileList;
+import cli.Find;
+import cli.FindExpr;
+import cli.NameMatcher;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+  // Find.in over the deep tree, with and without -name and -prune, sequential and parallel.
+  // the prune pattern cuts about a quarter of the directories.
+  //
+  // the retained benchmarks keep the results of a walk, as an EntryTable from Find.collect or
+  // as the FileList of Find.in, and report the heap they hold after a gc as retained.bytes.
+  // they run once per iteration, since each one collects twice.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class FindBench {
+
+    @Param({ "", "*.java" })
+    public String name;
+
+    @Param({ "", "[a-f]*" })
+    public String prune;
+
+    @Param({ "1", "4" })
+    public int parallelism;
+
+    private Path deep;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        deep = Trees.create(Trees.deep());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        TreeGenerator.delete(deep);
+    }
+
+    @Benchmark
+    public void in(Blackhole bh) {
+        Find.in(deep.toString(), name, prune, parallelism, bh::consume);
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Retained {
+        public long bytes;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    public void retainedTable(Retained retained, Blackhole bh) {
+        long before = used();
+        FindExpr expr = name.equals("") ? null : FindExpr.name(NameMatcher.of(name));
+        NameMatcher pruning = prune.equals("") ? null : NameMatcher.of(prune);
+        EntryTable table = Find.collect(deep.toString(), expr, pruning, parallelism, 0, 0);
+        retained.bytes = used() - before;
+        bh.consume(table.size());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    public void retainedList(Retained retained, Blackhole bh) throws IOException {
+        long before = used();
+        FileList list = Find.in(deep.toString(), name, prune, parallelism);
+        retained.bytes = used() - before;
+        bh.consume(list.entries().size());
+    }
+
+    private static long used() {
+        Runtime rt = Runtime.getRuntime();
+        for (int n = 0; n < 3; n++) System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
@@ -0,0 +1,142 @@
+package cli.bench;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Random;
+
+  // builds a synthetic directory tree for the benchmarks.  the same settings and seed always
+  // give the same names, sizes and modification times, so runs can be compared with each other.
+  //
+  // every directory down to depth holds files() files and fanOut() subdirectories.  names are
+  // random lowercase words between minLength and maxLength long; extensions are drawn from
+  // EXTENSIONS with a Zipf distribution, so a few are common and the rest are rare, like in a
+  // real source tree.  a hidden() fraction of names start with '.'.  files are sparse, with
+  // log-uniform sizes up to maxSize, and times spread over the years before EPOCH.
+public class TreeGenerator {
+
+    public static final String[] EXTENSIONS =
+        { "java", "class", "txt", "log", "c", "h", "md", "json", "xml", "png", "so", "gz" };
+
+    public static final long EPOCH = 1577836800000L;     // 2020-01-01T00:00Z
+
+    public TreeGenerator fanOut(int n)          { fanOut = n; return this; }
+    public TreeGenerator depth(int n)           { depth = n; return this; }
+    public TreeGenerator files(int n)           { files = n; return this; }
+    public TreeGenerator hidden(double ratio)   { hidden = ratio; return this; }
+    public TreeGenerator skew(double s)         { skew = s; return this; }
+    public TreeGenerator nameLength(int min, int max) { minLength = min; maxLength = max; return this; }
+    public TreeGenerator maxSize(long n)        { maxSize = n; return this; }
+    public TreeGenerator seed(long n)           { seed = n; return this; }
+
+      // number of directories and files generate() will create, root included
+    public long directories() {
+        long d = 1, level = 1;
+        for (int n = 0; n < depth; n++) { level *= fanOut; d += level; }
+        return d;
+    }
+
+    public long totalFiles() {
+        return directories() * files;
+    }
+
+      // a new tree in a fresh temporary directory under parent.  returns its root.
+    public Path generate(Path parent) throws IOException {
+        Path root = Files.createTempDirectory(parent, "tree");
+        Random random = new Random(seed);
+        double[] cumulative = zipf(EXTENSIONS.length, skew);
+        fill(root, 0, random, cumulative);
+        return root;
+    }
+
+      // remove a generated tree, e.g. after a benchmark trial
+    public static void delete(Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+      // usage: TreeGenerator DIR [fanOut depth files hidden seed]
+    public static void main(String ... args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: TreeGenerator DIR [FANOUT DEPTH FILES HIDDEN SEED]");
+            System.exit(1);
+        }
+        TreeGenerator g = new TreeGenerator();
+        if (args.length > 1) g.fanOut(Integer.parseInt(args[1]));
+        if (args.length > 2) g.depth(Integer.parseInt(args[2]));
+        if (args.length > 3) g.files(Integer.parseInt(args[3]));
+        if (args.length > 4) g.hidden(Double.parseDouble(args[4]));
+        if (args.length > 5) g.seed(Long.parseLong(args[5]));
+        Path root = g.generate(Paths.get(args[0]));
+        System.out.println(root + ": " + g.directories() + " directories, " + g.totalFiles() + " files");
+    }
+
+    private int fanOut = 4;
+    private int depth = 3;
+    private int files = 100;
+    private double hidden = 0.05;
+    private double skew = 1.0;
+    private int minLength = 3;
+    private int maxLength = 12;
+    private long maxSize = 1 << 20;
+    private long seed = 42;
+
+    private void fill(Path dir, int level, Random random, double[] cumulative) throws IOException {
+        for (int n = 0; n < files; n++) {
+            String ext = EXTENSIONS[pick(cumulative, random.nextDouble())];
+            Path file = dir.resolve(name(random, n) + "." + ext);
+              // sparse files: the size is what FileList sees, without writing any data
+            try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+                raf.setLength((long) Math.pow(maxSize + 1, random.nextDouble()) - 1);
+            }
+            Files.setLastModifiedTime(file, time(random));
+        }
+        if (level == depth) return;
+        for (int n = 0; n < fanOut; n++) {
+            Path sub = Files.createDirectory(dir.resolve(name(random, n)));
+            fill(sub, level + 1, random, cumulative);
+            Files.setLastModifiedTime(sub, time(random));
+        }
+    }
+
+      // the index keeps names unique within a directory
+    private String name(Random random, int index) {
+        int length = minLength + random.nextInt(maxLength - minLength + 1);
+        StringBuilder sb = new StringBuilder(length + 8);
+        if (random.nextDouble() < hidden) sb.append('.');
+        for (int n = 0; n < length; n++) sb.append((char) ('a' + random.nextInt(26)));
+        return sb.append('-').append(index).toString();
+    }
+
+    private static FileTime time(Random random) {
+        return FileTime.fromMillis(EPOCH - (long) (random.nextDouble() * 3 * 365 * 86400000L));
+    }
+
+      // cumulative probabilities of rank 1..n with weight 1/rank^s
+    private static double[] zipf(int n, double s) {
+        double[] c = new double[n];
+        double sum = 0;
+        for (int k = 0; k < n; k++) c[k] = (sum += 1 / Math.pow(k + 1, s));
+        for (int k = 0; k < n; k++) c[k] /= sum;
+        return c;
+    }
+
+    private static int pick(double[] cumulative, double u) {
+        for (int k = 0; k < cumulative.length; k++) if (u < cumulative[k]) return k;
+        return cumulative.length - 1;
+    }
+}
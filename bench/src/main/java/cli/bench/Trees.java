@@ -0,0 +1,45 @@
+package cli.bench;
+
+import cli.FileList;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+  // the trees the benchmarks run against, created under -Dbench.dir (the temp dir by default)
+  // so a particular file system can be measured.
+final class Trees {
+
+      // one directory with many files, for the single listing benchmarks
+    static TreeGenerator flat() {
+        return new TreeGenerator().depth(0).files(10000);
+    }
+
+      // a few thousand directories and tens of thousands of files, for -R and Find
+    static TreeGenerator deep() {
+        return new TreeGenerator().fanOut(6).depth(3).files(100);
+    }
+
+    static Path create(TreeGenerator g) throws IOException {
+        return g.generate(Paths.get(System.getProperty("bench.dir", System.getProperty("java.io.tmpdir"))));
+    }
+
+      // FileList option letters, as on its command line
+    static int options(String letters) {
+        int options = 0;
+        for (char c : letters.toCharArray()) {
+            switch (c) {
+                case 'A': options |= FileList.ALL; break;
+                case 'l': options |= FileList.EXTENDED; break;
+                case 'c': options |= FileList.CANONICAL; break;
+                case 't': options |= FileList.BYTIME; break;
+                case 'S': options |= FileList.BYSIZE; break;
+                case 'r': options |= FileList.REVERSE; break;
+                case 'R': options |= FileList.RECURSE; break;
+                default: throw new IllegalArgumentException("unknown option " + c);
+            }
+        }
+        return options;
+    }
+
+    private Trees() { }
+}
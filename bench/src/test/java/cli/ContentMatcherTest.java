@@ -0,0 +1,52 @@
+package cli;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ContentMatcherTest {
+
+    @TempDir
+    Path tmp;
+
+      // a sparse file of size bytes without a newline: text at the start, so it isn't binary,
+      // and text again at offset at
+    private Path file(long size, long at, String text) throws IOException {
+        Path p = tmp.resolve("f" + at);
+        byte[] head = new byte[ContentMatcher.SNIFF];
+        Arrays.fill(head, (byte) 'a');
+        try (RandomAccessFile f = new RandomAccessFile(p.toFile(), "rw")) {
+            f.setLength(size);
+            f.write(head);
+            f.seek(at);
+            f.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return p;
+    }
+
+    @Test
+    void regexFindsMatchAcrossRegionsOfOneLongLine() throws IOException {
+        long size = ContentMatcher.REGION + (1 << 20);
+        Path p = file(size, ContentMatcher.REGION - 3, "FOObar");
+        assertTrue(ContentMatcher.regex("FOO[a-z]+").matches(p, size));
+        assertTrue(ContentMatcher.literal("FOObar").matches(p, size));
+        assertFalse(ContentMatcher.regex("FOOBAR").matches(p, size));
+    }
+
+    @Test
+    void regexFindsMatchAfterLastNewlineOfRegion() throws IOException {
+        long size = ContentMatcher.REGION + (1 << 20);
+        Path p = file(size, ContentMatcher.REGION - 10, "\nFOObar");
+        assertTrue(ContentMatcher.regex("^FOObar").matches(p, size));
+        assertTrue(ContentMatcher.literal("FOObar").matches(p, Files.size(p)));
+    }
+}
@@ -0,0 +1,37 @@
+package cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DiskUsageTest {
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void directoryReplacedWithSameMtimeIsReadAgain() throws IOException {
+        Path root = Files.createDirectories(tmp.resolve("root"));
+        Path d = Files.createDirectories(root.resolve("d"));
+        Files.write(d.resolve("small"), new byte[1000]);
+        FileTime mtime = Files.getLastModifiedTime(d);
+        Path cache = tmp.resolve("cache");
+        DiskUsage.of(root.toString(), DiskUsage.BYTES, -1, 2, DiskUsage.Cache.load(cache, DiskUsage.BYTES)).save(cache);
+
+          // another directory in d's place, with d's mtime
+        Files.move(d, root.resolve("old"));
+        Path e = Files.createDirectories(root.resolve("d"));
+        Files.write(e.resolve("large"), new byte[5000]);
+        Files.setLastModifiedTime(e, mtime);
+
+        long cached = DiskUsage.of(root.toString(), DiskUsage.BYTES, -1, 2, DiskUsage.Cache.load(cache, DiskUsage.BYTES)).total();
+        long fresh = DiskUsage.of(root.toString(), DiskUsage.BYTES, -1, 2, null).total();
+        assertEquals(fresh, cached);
+    }
+}
@@ -0,0 +1,46 @@
+package cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DuplicatesTest {
+
+    @TempDir
+    Path root;
+
+    private List<List<String>> groups() throws IOException {
+        Duplicates dups = new Duplicates(2);
+        for (FileEntry e : Find.in(root.toString(), "", "").entries()) if (!e.isDirectory()) dups.add(e.full());
+        List<List<String>> names = new ArrayList<List<String>>();
+        for (List<FileEntry> group : dups.groups()) {
+            List<String> g = new ArrayList<String>();
+            for (FileEntry e : group) g.add(e.name());
+            names.add(g);
+        }
+        return names;
+    }
+
+    @Test
+    void hardLinksAreListedWithTheirGroup() throws IOException {
+        byte[] large = new byte[3 * Duplicates.SAMPLE];
+        new Random(1).nextBytes(large);
+        Files.write(root.resolve("a"), large);
+        Files.write(root.resolve("b"), large);
+        Files.createLink(root.resolve("c"), root.resolve("a"));
+        Files.write(root.resolve("x"), "alone".getBytes());
+        Files.createLink(root.resolve("y"), root.resolve("x"));
+        large[Duplicates.SAMPLE + 1]++;     // differs from a and b in the middle only
+        Files.write(root.resolve("m"), large);
+
+        assertEquals(List.of(List.of("a", "b", "c")), groups());
+    }
+}
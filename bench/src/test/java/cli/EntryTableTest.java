@@ -0,0 +1,83 @@
+package cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class EntryTableTest {
+
+    @TempDir
+    Path root;
+
+      // files of distinct sizes, so the order by size has no ties
+    @BeforeEach
+    void tree() throws IOException {
+        int size = 1;
+        for (String dir : new String[] { "a", "a/b", "c", "c/d" }) {
+            Path d = Files.createDirectories(root.resolve(dir));
+            for (int n = 0; n < 5; n++) Files.write(d.resolve("f" + n), new byte[size++ * 3]);
+        }
+    }
+
+      // what Find prints for the same walk: the paths, directories with a separator
+    private Set<String> found(int parallelism) throws IOException {
+        Set<String> lines = new HashSet<String>();
+        for (FileEntry e : Find.in(root.toString(), "", "", parallelism).entries())
+            lines.add(e.path() + (e.isDirectory() ? "/" : ""));
+        return lines;
+    }
+
+    private static List<String> lines(EntryTable table, int options) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutputBuffer out = new OutputBuffer(bytes);
+        table.write(out, options);
+        out.flush();
+        return Arrays.asList(new String(bytes.toByteArray(), StandardCharsets.UTF_8).split("\n"));
+    }
+
+    @Test
+    void writesWhatFindFinds() throws IOException {
+        for (int parallelism : new int[] { 1, 4 }) {
+            EntryTable table = Find.collect(root.toString(), null, null, parallelism, 0, 0);
+            List<String> written = lines(table, 0);
+            assertEquals(table.size(), written.size());
+            assertEquals(found(parallelism), new HashSet<String>(written));
+        }
+    }
+
+    @Test
+    void orderBySizeMatchesTopK() throws IOException {
+        EntryTable table = Find.collect(root.toString(), FindExpr.parse(List.of("-type", "f")), null, 4, 0, FileList.BYSIZE);
+        TopK ranking = new TopK(Integer.MAX_VALUE, FileList.BYSIZE);
+        Find.in(root.toString(), FindExpr.parse(List.of("-type", "f")), null, 1, 0, e -> {
+            try { ranking.offer(e.full()); }
+            catch (IOException x) { throw new AssertionError(x); }
+        });
+        List<String> expected = new ArrayList<String>();
+        for (FileEntry e : ranking.ranked()) expected.add(e.path().toString());
+
+        List<String> ordered = new ArrayList<String>();
+        for (int row : table.order(FileList.BYSIZE)) ordered.add(table.path(row));
+        assertEquals(expected, ordered);
+        assertEquals(expected, lines(table, FileList.BYSIZE));
+
+        List<String> reversed = new ArrayList<String>();
+        for (int row : table.order(FileList.BYSIZE | FileList.REVERSE)) reversed.add(table.entry(row).path().toString());
+        Collections.reverse(reversed);
+        assertEquals(expected, reversed);
+    }
+}
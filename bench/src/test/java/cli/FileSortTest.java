@@ -0,0 +1,43 @@
+package cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class FileSortTest {
+
+      // few distinct sizes, times and names, so every key has ties, and some extreme values
+    private static List<FileEntry> entries(int n, long seed) {
+        Random random = new Random(seed);
+        long[] extremes = { Long.MIN_VALUE + 1, -1, 0, Long.MAX_VALUE };
+        List<FileEntry> entries = new ArrayList<FileEntry>();
+        for (int i = 0; i < n; i++) {
+            long size = (i % 7 == 0) ? extremes[random.nextInt(4)] : random.nextInt(5) * 1000L;
+            long mtime = random.nextInt(4) * 86_400_000L;
+            String name = "f" + random.nextInt(20);
+            entries.add(new FileEntry(Paths.get("/d" + i, name), false, size, mtime, 0644, 0, 0, "root", "root", i, 1, 1));
+        }
+        return entries;
+    }
+
+    @Test
+    void sortsLikeTheComparator() {
+        int[][] keyss = { {}, { FileSort.BYSIZE }, { FileSort.BYTIME }, { FileSort.BYSIZE, FileSort.BYTIME }, { FileSort.BYTIME, FileSort.BYSIZE } };
+        for (int n : new int[] { 0, 1, 500, FileSort.PARALLEL_THRESHOLD + 100 }) {
+            List<FileEntry> entries = entries(n, n);
+            for (int[] keys : keyss) {
+                List<FileEntry> expected = new ArrayList<FileEntry>(entries);
+                expected.sort(FileSort.order(keys));     // stable, like sort()
+                List<FileEntry> sorted = FileSort.sort(entries, keys);
+                assertEquals(n, sorted.size());
+                for (int i = 0; i < n; i++) assertSame(expected.get(i), sorted.get(i), "entry " + i + " of " + n);
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FindIndexTest {
+
+    @TempDir
+    Path tmp;
+
+    Path root;
+    Path index;
+
+      // a/real holds files and a link out of the tree, a/alias links to a/real,
+      // b has links to a file in b and to a file in a/real
+    @BeforeEach
+    void tree() throws IOException {
+        root = tmp.toRealPath().resolve("tree");
+        index = tmp.resolve("index");
+        Path real = Files.createDirectories(root.resolve("a/real"));
+        Path b = Files.createDirectories(root.resolve("b"));
+        Path c = Files.createDirectories(tmp.toRealPath().resolve("outside"));
+        Files.createFile(real.resolve("x"));
+        Files.createFile(real.resolve("y"));
+        Files.createFile(b.resolve("vim"));
+        Files.createFile(c.resolve("z"));
+        Files.createSymbolicLink(root.resolve("a/alias"), root.resolve("a/real"));
+        Files.createSymbolicLink(real.resolve("toc"), c);
+        Files.createSymbolicLink(b.resolve("vi"), b.resolve("vim"));
+        Files.createSymbolicLink(b.resolve("xlink"), real.resolve("x"));
+        Files.createSymbolicLink(b.resolve("dangling"), b.resolve("missing"));
+    }
+
+      // what Find prints: canonical paths, with a '/' after directories
+    private List<String> live(String pattern) {
+        List<String> out = new ArrayList<String>();
+        Find.in(root.toString(), pattern, "", 1, e -> {
+            try { out.add(e.file().getCanonicalPath() + (e.isDirectory() ? File.separator : "")); }
+            catch (IOException x) { throw new AssertionError(x); }
+        });
+        Collections.sort(out);
+        return out;
+    }
+
+    private List<String> indexed(String pattern) throws IOException {
+        List<String> out = new ArrayList<String>();
+        FindIndex.query(index, root.toString(), pattern, "", e -> out.add(e.path() + (e.isDirectory() ? File.separator : "")));
+        Collections.sort(out);
+        return out;
+    }
+
+    @Test
+    void queryMatchesLiveWalkThroughLinks() throws IOException {
+        FindIndex.update(index, Collections.singletonList(root.toString()));
+        for (String pattern : new String[] { "", "x", "vi*", "toc", "z" })
+            assertEquals(live(pattern), indexed(pattern), "pattern '" + pattern + "'");
+    }
+
+    @Test
+    void refreshKeepsLinks() throws IOException {
+        FindIndex.update(index, Collections.singletonList(root.toString()));
+        Files.createFile(root.resolve("b/new"));
+        FindIndex.update(index, Collections.singletonList(root.toString()));
+        assertEquals(live(""), indexed(""));
+    }
+
+      // a directory that was unreadable at the last update is read again once it can be,
+      // although chmod leaves its mtime alone.  root reads everything, so not as root.
+    @Test
+    void refreshReadsDirectoryThatBecameReadable() throws IOException {
+        assumeFalse("root".equals(System.getProperty("user.name")));
+        Path locked = root.resolve("a/real");
+        FileTime mtime = Files.getLastModifiedTime(locked);
+        Files.setPosixFilePermissions(locked, PosixFilePermissions.fromString("---------"));
+        try { FindIndex.update(index, Collections.singletonList(root.toString())); }
+        finally { Files.setPosixFilePermissions(locked, PosixFilePermissions.fromString("rwxr-xr-x")); }
+        assertEquals(mtime, Files.getLastModifiedTime(locked));
+        FindIndex.update(index, Collections.singletonList(root.toString()));
+        assertTrue(indexed("x").contains(locked.resolve("x").toString()));
+        assertEquals(live(""), indexed(""));
+    }
+}
@@ -0,0 +1,86 @@
+package cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FindTest {
+
+    @TempDir
+    Path root;
+
+      // path relative to root -> whether it was reported as a directory
+    private Map<String, Boolean> walk(int parallelism, int flags) {
+        Map<String, Boolean> found = new ConcurrentHashMap<String, Boolean>();
+        Find.in(root.toString(), (FindExpr) null, null, parallelism, flags,
+            e -> found.put(root.relativize(e.path()).toString(), e.isDirectory()));
+        return found;
+    }
+
+    private Map<String, Boolean> walk(int parallelism, String ... expression) {
+        Map<String, Boolean> found = new ConcurrentHashMap<String, Boolean>();
+        Find.in(root.toString(), FindExpr.parse(Arrays.asList(expression)), null, parallelism, 0,
+            e -> found.put(root.relativize(e.path()).toString(), e.isDirectory()));
+        return found;
+    }
+
+    @Test
+    void linkToDirectoryInLeafIsFollowed() throws IOException {
+          // leaf has no subdirectories, so its link count is 2, but it holds a link to one
+        Path leaf = Files.createDirectories(root.resolve("leaf"));
+        Path other = Files.createDirectories(root.resolve("other"));
+        Files.createFile(leaf.resolve("a"));
+        Files.createFile(other.resolve("z"));
+        Files.createSymbolicLink(leaf.resolve("link"), other);
+        Files.createFile(leaf.resolve("b"));
+
+        for (int parallelism : new int[] { 1, 4 }) {
+            Map<String, Boolean> found = walk(parallelism, 0);
+            assertEquals(Boolean.TRUE, found.get("leaf/link"), "link reported as a directory");
+            assertTrue(found.containsKey("leaf/link/z"), "link descended");
+            assertEquals(Boolean.FALSE, found.get("leaf/a"));
+            assertEquals(Boolean.FALSE, found.get("leaf/b"));
+        }
+    }
+
+    @Test
+    void leafStillReportsEveryFile() throws IOException {
+        Path dir = Files.createDirectories(root.resolve("d"));
+        Files.createDirectories(dir.resolve("sub"));
+        for (int n = 0; n < 10; n++) Files.createFile(dir.resolve("f" + n));
+
+        Map<String, Boolean> found = walk(1, Find.LEAF);
+        assertEquals(walk(1, 0).keySet(), found.keySet());
+        assertEquals(Boolean.TRUE, found.get("d/sub"));
+    }
+
+    @Test
+    void parallelContentTestsMatchSequential() throws IOException {
+        Path dir = Files.createDirectories(root.resolve("d"));
+        Files.createDirectories(dir.resolve("sub"));
+        for (int n = 0; n < 40; n++)
+            Files.write(dir.resolve("f" + n + (n % 3 == 0 ? ".txt" : ".log")), ("line " + n + "\n").getBytes());
+        Files.write(dir.resolve("sub/g.txt"), "line 7\n".getBytes());
+
+        String[][] expressions = {
+            { "-contains", "7" },
+            { "-name", "*.txt", "-contains", "1" },
+            { "-type", "d", "-o", "-regex-content", "line [0-9]$" },
+            { "-not", "-contains", "1", "-not", "-name", "*.log" },
+        };
+        for (String[] expression : expressions) {
+            Map<String, Boolean> found = walk(4, expression);
+            assertEquals(walk(1, expression), found, String.join(" ", expression));
+        }
+        assertEquals(5, walk(4, "-contains", "7").size());     // f7, f17, f27, f37, g.txt
+    }
+}
@@ -0,0 +1,80 @@
+package cli;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class OutputBufferTest {
+
+    private static byte[] written(String s) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutputBuffer out = new OutputBuffer(bytes);
+        out.append(s);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    @Test
+    void unpairedSurrogatesAreOneQuestionMark() throws IOException {
+        assertArrayEquals(new byte[] { 'a', '?', 'b' }, written("a\uD800b"));
+        assertArrayEquals(new byte[] { 'a', '?', 'b' }, written("a\uDC00b"));
+        assertArrayEquals(new byte[] { '?', '?' }, written("\uDC00\uD800"));
+        assertArrayEquals(new byte[] { 'a', '?' }, written("a\uD800"));
+        for (char c : new char[] { '\uD800', '\uDC00' }) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            OutputBuffer out = new OutputBuffer(bytes);
+            out.append(c);
+            out.flush();
+            assertArrayEquals(new byte[] { '?' }, bytes.toByteArray());
+        }
+    }
+
+    @Test
+    void matchesUtf8AndUtf8Length() throws IOException {
+        for (String s : new String[] { "plain", "caf\u00e9", "\u20ac100", "\uD83D\uDE00 x", "a\uD800b\uDC00c" }) {
+            byte[] b = written(s);
+            assertEquals(OutputBuffer.utf8Length(s), b.length, s);
+            if (s.indexOf('\uD800') < 0) assertArrayEquals(s.getBytes(StandardCharsets.UTF_8), b, s);
+        }
+    }
+
+      // what Find does: results appended under the buffer's monitor while other threads println
+      // errors through a PrintStream around it and the stream() flusher runs.  every line must
+      // come out whole.
+    @Test
+    void printlnAndAppendsDontInterleave() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutputBuffer out = new OutputBuffer(bytes, 4096);
+        PrintStream errors = new PrintStream(out, false);
+        out.stream();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 8; t++) {
+            boolean printer = t % 2 == 0;
+            threads.add(new Thread(() -> {
+                for (int n = 0; n < 20000; n++) {
+                    if (printer) errors.println("Find: Error: cannot read /some/where/" + n);
+                    else synchronized (out) {
+                        try { out.append("/a/result/").append(n).newline(); }
+                        catch (IOException e) { throw new RuntimeException(e); }
+                    }
+                }
+            }));
+        }
+        for (Thread t : threads) t.start();
+        for (Thread t : threads) t.join();
+        errors.flush();
+        String[] lines = new String(bytes.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        assertEquals(8 * 20000, lines.length);
+        for (String line : lines) {
+            if (!line.matches("Find: Error: cannot read /some/where/\\d+|/a/result/\\d+")) throw new AssertionError("broken line: " + line);
+        }
+    }
+}
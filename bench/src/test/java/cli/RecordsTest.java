@@ -0,0 +1,53 @@
+package cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+class RecordsTest {
+
+      // each path, written as a record in both formats and read back
+    private static void roundTrip(String[] paths, String[] expected) throws IOException {
+        for (boolean binary : new boolean[] { false, true }) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            OutputBuffer out = new OutputBuffer(bytes);
+            if (binary) Records.header(out);
+            for (String path : paths) {
+                Records.Record r = new Records.Record(path, 'f', false, 42, 1700000000000L, 0644, "root", "wheel");
+                if (binary) Records.writeBinary(r, out);
+                else Records.writeJson(r, out);
+            }
+            out.flush();
+            try (Records.Reader in = new Records.Reader(new ByteArrayInputStream(bytes.toByteArray()))) {
+                for (String path : expected) {
+                    Records.Record r = in.next();
+                    assertEquals(path, r.path(), binary ? "binary" : "ndjson");
+                    assertEquals(42, r.size());
+                    assertEquals(1700000000000L, r.lastModified());
+                    assertEquals(0644, r.mode());
+                    assertEquals("root", r.owner());
+                    assertEquals("wheel", r.group());
+                }
+                assertNull(in.next());
+            }
+        }
+    }
+
+    @Test
+    void namesComeBackIntact() throws IOException {
+        String[] paths = { "/tmp/plain", "/tmp/new\nline", "/tmp/\"quoted\"\t\\", "/tmp/caf\u00e9 \uD83D\uDE00" };
+        roundTrip(paths, paths);
+    }
+
+      // an unpaired surrogate is written as '?', and the records after it are still read
+    @Test
+    void unpairedSurrogateKeepsStreamInSync() throws IOException {
+        roundTrip(new String[] { "/tmp/a\uD800b", "/tmp/\uDC00", "/tmp/after" },
+                  new String[] { "/tmp/a?b", "/tmp/?", "/tmp/after" });
+    }
+}
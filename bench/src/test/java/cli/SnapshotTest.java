@@ -0,0 +1,48 @@
+package cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SnapshotTest {
+
+    @TempDir
+    Path tmp;
+
+    private List<String> diff(Path older, Path root) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutputBuffer out = new OutputBuffer(bytes);
+        Snapshot.diff(older, root.toString(), null, null, out);
+        out.flush();
+        String text = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        return text.isEmpty() ? Arrays.<String>asList() : Arrays.asList(text.split("\n"));
+    }
+
+      // a directory moved aside and replaced by another one with the same mtime has to be read
+    @Test
+    void replacedDirectoryWithSameMtimeIsRead() throws IOException {
+        Path root = Files.createDirectories(tmp.resolve("tree"));
+        Path d = Files.createDirectories(root.resolve("d"));
+        Files.createFile(d.resolve("a"));
+        FileTime mtime = Files.getLastModifiedTime(d);
+        Path snapshot = tmp.resolve("snapshot");
+        Snapshot.write(root.toString(), null, snapshot);
+        assertEquals(Arrays.asList(), diff(snapshot, root));
+
+        Files.move(d, tmp.resolve("aside"));
+        Files.createDirectories(d);
+        Files.createFile(d.resolve("b"));
+        Files.setLastModifiedTime(d, mtime);
+        assertEquals(Arrays.asList("M " + d + "/", "- " + d + "/a", "+ " + d + "/b"), diff(snapshot, root));
+    }
+}
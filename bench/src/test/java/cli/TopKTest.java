@@ -0,0 +1,66 @@
+package cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class TopKTest {
+
+    private static FileEntry file(String path, long size, long inode) {
+        return new FileEntry(Paths.get(path), false, size, 0, 0644, 0, 0, "root", "root", inode, 1, 1);
+    }
+
+    private static List<String> paths(TopK top) {
+        List<String> out = new ArrayList<String>();
+        for (FileEntry e : top.ranked()) out.add(e.path().toString());
+        return out;
+    }
+
+      // /t/z is a hard link to /t/a, offered first and then pushed out of the heap
+    @Test
+    void betterCopyReplacesTheKeptOne() {
+        TopK top = new TopK(3, FileList.BYSIZE);
+        top.offer(file("/t/z", 10, 1));
+        top.offer(file("/t/c", 30, 2));
+        top.offer(file("/t/b", 20, 3));
+        top.offer(file("/t/a", 10, 1));
+        top.offer(file("/t/m", 10, 4));
+        assertEquals(List.of("/t/c", "/t/b", "/t/a"), paths(top));
+    }
+
+    @Test
+    void worseCopyIsTurnedAway() {
+        TopK top = new TopK(2, FileList.BYSIZE);
+        top.offer(file("/t/a", 10, 1));
+        top.offer(file("/t/z", 10, 1));
+        top.offer(file("/t/m", 5, 2));
+        assertEquals(List.of("/t/a", "/t/m"), paths(top));
+    }
+
+      // the same as sorting everything and keeping the first path of each file
+    @Test
+    void matchesSortAndDedup() {
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            List<FileEntry> all = new ArrayList<FileEntry>();
+            for (int n = 0; n < 40; n++) all.add(file("/t/" + n, random.nextInt(8), random.nextInt(15) + 1));
+            int k = random.nextInt(10) + 1;
+            TopK top = new TopK(k, FileList.BYSIZE);
+            for (FileEntry e : all) top.offer(e);
+
+            List<FileEntry> sorted = new ArrayList<FileEntry>(all);
+            sorted.sort(FileSort.order(FileList.sortKeys(FileList.BYSIZE)));
+            List<String> expected = new ArrayList<String>();
+            Set<Long> seen = new HashSet<Long>();
+            for (FileEntry e : sorted) if (expected.size() < k && seen.add(e.inode())) expected.add(e.path().toString());
+            assertEquals(expected, paths(top), "round " + round);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TreeCacheTest {
+
+    @TempDir
+    Path tmp;
+
+    @AfterEach
+    void uninstall() {
+        TreeCache.install(null);
+    }
+
+    private static Set<String> names(List<FileEntry> entries) {
+        Set<String> names = new TreeSet<String>();
+        for (FileEntry e : entries) names.add(e.name());
+        return names;
+    }
+
+      // events arrive on the cache's own thread, so wait a while for them
+    private static void await(Supplier<Boolean> condition) throws InterruptedException {
+        for (int n = 0; n < 200 && !condition.get(); n++) Thread.sleep(50);
+        assertTrue(condition.get());
+    }
+
+    private static FileEntry entry(List<FileEntry> entries, String name) {
+        for (FileEntry e : entries) if (e.name().equals(name)) return e;
+        return null;
+    }
+
+    @Test
+    void lookupFollowsChangesToWatchedDirectory() throws IOException, InterruptedException {
+        Path root = Files.createDirectories(tmp.resolve("root"));
+        Path sub = Files.createDirectories(root.resolve("sub"));
+        Files.createFile(sub.resolve("a"));
+
+          // no rescans: every change has to come from an event
+        try (TreeCache cache = new TreeCache(1000, 3_600_000L)) {
+            TreeCache.install(cache);
+            cache.watch(root);
+            assertEquals(0, cache.hits());
+            assertEquals(2, cache.misses());     // root and sub, read once each
+            assertEquals(2, cache.size());
+
+            assertEquals(Set.of("a"), names(TreeCache.lookup(sub)));
+            assertEquals(1, cache.hits());
+            assertNull(TreeCache.lookup(tmp));   // not watched, and not counted
+            assertEquals(1, cache.hits());
+            assertEquals(2, cache.misses());
+
+            Files.createFile(sub.resolve("b"));
+            Files.delete(sub.resolve("a"));
+            await(() -> names(TreeCache.lookup(sub)).equals(Set.of("b")));
+            await(() -> {
+                try { return entry(TreeCache.lookup(root), "sub").lastModified() == Files.getLastModifiedTime(sub).toMillis(); }
+                catch (IOException e) { return false; }
+            });
+            assertEquals(2, cache.misses());     // all served from the cache
+            assertTrue(cache.hits() > 1);
+            assertEquals(2, cache.size());
+
+              // a listing dropped from the cache is read again, and counted as a miss
+            try (TreeCache small = new TreeCache(1, 3_600_000L)) {
+                TreeCache.install(small);
+                small.watch(root);
+                long misses = small.misses();
+                assertEquals(Set.of("b"), names(TreeCache.lookup(sub)));
+                assertEquals(misses + 1, small.misses());
+            }
+        }
+    }
+}